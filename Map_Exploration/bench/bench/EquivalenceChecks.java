@@ -0,0 +1,734 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import algorithms.astar.DStarLite;
+import algorithms.astar.DistanceField;
+import algorithms.astar.FirstMoveTable;
+import algorithms.astar.GoalTest;
+import algorithms.astar.Grid;
+import algorithms.astar.HierarchicalPathfinding;
+import algorithms.astar.JumpPointSearch;
+import algorithms.astar.LandmarkHeuristic;
+import algorithms.astar.OccupancyLayer;
+import algorithms.astar.Path;
+import algorithms.astar.PathSearch;
+import algorithms.astar.PathService;
+import algorithms.astar.Pathfinding;
+import algorithms.astar.StaticLayer;
+import utils.Coordinates;
+import utils.ObstacleMap;
+import utils.raytrace.RayHit;
+import utils.raytrace.RayTracing;
+import utils.raytrace.ShadowCasting;
+
+/**
+ * Checks that the faster planners give the same answers as the plain
+ * versions they replace, on random maps and on the mazes of ObjectSetups:
+ * JPS, ALT and D* Lite find paths of the same cost as A*, HPA* never finds a
+ * path A* doesn't, a repaired distance field matches a new one, the
+ * nearest goal search finds the cheapest of the A* paths to every goal,
+ * agents sharing a layer plan as if they had their own grid, walks
+ * guided by a search spread over ticks reach their target, searches run
+ * by the PathService aren't affected by later changes to the grid, and
+ * occupied nodes are avoided as if they were obstacles, the first move
+ * table gives paths of the same cost as A*, and shadowcasting visits each
+ * visible cell once and symmetrically.
+ * Prints one line per check and exits with 1 if any of them failed.
+ */
+public class EquivalenceChecks {
+
+	private static int failedChecks;
+
+	public static void main(String[] args) throws InterruptedException, ExecutionException {
+		for (double density : new double[] { 0, 0.1, 0.3 }) {
+			String label = "random " + (int) (density * 100) + "% 100x100";
+			boolean[][] blocked = Maps.random(100, density, 1);
+			jumpPoints(label, blocked);
+			landmarks(label, blocked);
+		}
+		jumpPoints("Maze1515", Maps.maze1515());
+		landmarks("Maze1515", Maps.maze1515());
+		jumpPoints("Maze5050", Maps.maze5050());
+		landmarks("Maze5050", Maps.maze5050());
+
+		hierarchical();
+		incremental();
+		distanceField();
+		nearest();
+		overlays();
+		landmarkOverlays();
+		budgetedWalks();
+		async();
+		occupancy();
+		firstMoves("random 20% 60x60", Maps.random(60, 0.2, 11));
+		firstMoves("Maze5050", Maps.maze5050());
+		firstMovesAfterChanges();
+		fieldOfView("open 60x60", Maps.random(60, 0, 5), true);
+		fieldOfView("random 20% 60x60", Maps.random(60, 0.2, 5), false);
+
+		if (failedChecks > 0) {
+			System.out.println(failedChecks + " checks failed");
+			System.exit(1);
+		}
+		System.out.println("All checks passed");
+	}
+
+	private static void report(String check, int failures, int total) {
+		System.out.printf("%-6s %-55s %d/%d differ%n", failures == 0 ? "OK" : "FAILED", check, failures, total);
+		if (failures > 0)
+			failedChecks++;
+	}
+
+	private static void jumpPoints(String label, boolean[][] blocked) {
+		Pathfinding pathfinding = Maps.pathfinding(blocked);
+		JumpPointSearch jps = new JumpPointSearch(pathfinding.getGrid());
+		int failures = 0;
+		Coordinates[][] queries = PlannerBenchmark.queries(blocked, 500, 2);
+		for (Coordinates[] query : queries) {
+			if (Maps.cost(query[0], pathfinding.FindPath(query[0], query[1])) != Maps.cost(query[0],
+					jps.FindPath(query[0], query[1])))
+				failures++;
+		}
+		report("JPS cost, " + label, failures, queries.length);
+	}
+
+	private static void landmarks(String label, boolean[][] blocked) {
+		Pathfinding pathfinding = Maps.pathfinding(blocked);
+		LandmarkHeuristic heuristic = new LandmarkHeuristic(pathfinding.getGrid(),
+				LandmarkHeuristic.DEFAULT_LANDMARK_COUNT);
+		int failures = 0;
+		Coordinates[][] queries = PlannerBenchmark.queries(blocked, 500, 3);
+		for (Coordinates[] query : queries) {
+			pathfinding.setHeuristic(null);
+			int expected = Maps.cost(query[0], pathfinding.FindPath(query[0], query[1]));
+			pathfinding.setHeuristic(heuristic);
+			if (expected != Maps.cost(query[0], pathfinding.FindPath(query[0], query[1])))
+				failures++;
+		}
+		report("ALT cost, " + label, failures, queries.length);
+	}
+
+	/**
+	 * HPA* must find a path exactly when A* does, and its paths have to
+	 * reach the target.
+	 */
+	private static void hierarchical() {
+		Random random = new Random(1);
+		int n = 60;
+		int failures = 0;
+		int total = 0;
+		for (int map = 0; map < 40; map++) {
+			boolean[][] blocked = Maps.random(n, 0.25 + 0.25 * random.nextDouble(), random.nextLong());
+			Pathfinding pathfinding = Maps.pathfinding(blocked);
+			HierarchicalPathfinding hierarchical = new HierarchicalPathfinding(pathfinding);
+			for (Coordinates[] query : PlannerBenchmark.queries(blocked, 100, random.nextLong())) {
+				Path expected = pathfinding.FindPath(query[0], query[1]);
+				Path path = hierarchical.FindPath(query[0], query[1]);
+				total++;
+				if ((expected == null) != (path == null) || path != null && !reaches(query[0], path, query[1]))
+					failures++;
+			}
+		}
+		report("HPA* paths exist and reach the target", failures, total);
+	}
+
+	/**
+	 * Walks agents towards their targets while cells around them change,
+	 * comparing each step's D* Lite path with a new A* search.
+	 */
+	private static void incremental() {
+		Random random = new Random(4);
+		int n = 60;
+		int failures = 0;
+		int total = 0;
+		for (int run = 0; run < 20; run++) {
+			boolean[][] blocked = Maps.random(n, 0.25, run);
+			Pathfinding pathfinding = Maps.pathfinding(blocked);
+			Grid grid = pathfinding.getGrid();
+			DStarLite dStarLite = new DStarLite(grid);
+			List<Coordinates> free = Maps.free(blocked);
+			Coordinates source = free.get(random.nextInt(free.size()));
+			Coordinates target = free.get(random.nextInt(free.size()));
+
+			for (int step = 0; step < 100 && !source.equals(target); step++) {
+				for (int k = 0; k < 5; k++) {
+					Coordinates cell = new Coordinates(random.nextInt(n), random.nextInt(n));
+					if (cell.equals(source) || cell.equals(target))
+						continue;
+					grid.setNodeWalkable(cell, !grid.isWalkable(cell));
+					dStarLite.onWalkableChanged(grid.getIndex(cell.getX(), cell.getY()));
+				}
+				Path path = dStarLite.FindPath(source, target);
+				total++;
+				if (Maps.cost(source, path) != Maps.cost(source, pathfinding.FindPath(source, target))
+						|| path != null && !reaches(source, path, target))
+					failures++;
+				if (path == null || path.isEmpty())
+					break;
+				source = path.get(0);
+			}
+		}
+		report("D* Lite cost while cells change", failures, total);
+	}
+
+	/**
+	 * Toggles random cells of a distance field and compares every distance
+	 * with a field computed from scratch. Each next node must be a neighbour
+	 * whose distance plus the move cost is the node's own.
+	 */
+	private static void distanceField() {
+		Random random = new Random(7);
+		int n = 60;
+		int failures = 0;
+		int total = 0;
+		for (int map = 0; map < 20; map++) {
+			boolean[][] blocked = Maps.random(n, 0.3, map);
+			blocked[n / 2][n / 2] = false;
+			Grid grid = Maps.pathfinding(blocked).getGrid();
+			int root = grid.getIndex(n / 2, n / 2);
+			DistanceField field = new DistanceField(grid, root);
+			for (int toggle = 0; toggle < 200; toggle++) {
+				int node = random.nextInt(grid.getMaxSize());
+				if (node == root)
+					continue;
+				grid.setNodeWalkable(new Coordinates(grid.getX(node), grid.getY(node)), !grid.isWalkable(node));
+				field.onWalkableChanged(node);
+				DistanceField expected = new DistanceField(grid, root);
+				total++;
+				for (int i = 0; i < grid.getMaxSize(); i++) {
+					if (field.getDistance(i) != expected.getDistance(i) || !followsField(grid, field, i)) {
+						failures++;
+						break;
+					}
+				}
+			}
+		}
+		report("Distance field repair vs recompute", failures, total);
+	}
+
+	private static void nearest() {
+		Random random = new Random(8);
+		int n = 80;
+		int failures = 0;
+		int total = 0;
+		for (int map = 0; map < 20; map++) {
+			boolean[][] blocked = Maps.random(n, 0.3, map);
+			Pathfinding pathfinding = Maps.pathfinding(blocked);
+			List<Coordinates> free = Maps.free(blocked);
+			for (int query = 0; query < 30; query++) {
+				Coordinates source = free.get(random.nextInt(free.size()));
+				final boolean[][] goals = new boolean[n][n];
+				int cheapest = -1;
+				for (int i = 0; i < 20; i++) {
+					Coordinates goal = free.get(random.nextInt(free.size()));
+					if (goal.equals(source))
+						continue;
+					goals[goal.getX()][goal.getY()] = true;
+					int cost = Maps.cost(source, pathfinding.FindPath(source, goal));
+					if (cost >= 0 && (cheapest < 0 || cost < cheapest))
+						cheapest = cost;
+				}
+				Path path = pathfinding.FindNearest(source, new GoalTest() {
+					@Override
+					public boolean isGoal(int x, int y) {
+						return goals[x][y];
+					}
+				});
+				total++;
+				if (Maps.cost(source, path) != cheapest)
+					failures++;
+			}
+		}
+		report("Nearest goal cost vs cheapest A* path to a goal", failures, total);
+	}
+
+	/**
+	 * Two agents learn different obstacles through overlays of one layer.
+	 * Each one must see every cell and plan as it would on a grid of its own,
+	 * a copy taken halfway must keep what it saw then, while the layer and a
+	 * field built on it see the obstacles of both.
+	 */
+	private static void overlays() {
+		Random random = new Random(9);
+		int n = 100;
+		int failures = 0;
+		int total = 0;
+		for (int map = 0; map < 10; map++) {
+			StaticLayer layer = new StaticLayer(n, n);
+			Grid teamGrid = new Grid(layer);
+			DistanceField teamField = new DistanceField(teamGrid, teamGrid.getIndex(n / 2, n / 2));
+			Pathfinding[] overlays = new Pathfinding[2];
+			Pathfinding[] ownGrids = new Pathfinding[2];
+			for (int agent = 0; agent < 2; agent++) {
+				overlays[agent] = new Pathfinding(new Grid(layer, true));
+				ownGrids[agent] = new Pathfinding(n, n);
+			}
+			int teamVersion = teamGrid.getLayerVersion();
+			Grid overlayCopy = null;
+			Grid ownCopy = null;
+			for (int round = 0; round < 30; round++) {
+				if (round == 15) {
+					overlayCopy = overlays[0].getGrid().copy();
+					ownCopy = ownGrids[0].getGrid().copy();
+				}
+				for (int agent = 0; agent < 2; agent++) {
+					for (int k = 0; k < 200; k++) {
+						Coordinates cell = new Coordinates(random.nextInt(n), random.nextInt(n));
+						if (cell.getX() == n / 2 && cell.getY() == n / 2)
+							continue;
+						boolean walkable = random.nextInt(4) == 0;
+						overlays[agent].getGrid().setNodeWalkable(cell, walkable);
+						ownGrids[agent].getGrid().setNodeWalkable(cell, walkable);
+					}
+				}
+				teamGrid.refresh();
+				for (; teamVersion < teamGrid.getLayerVersion(); teamVersion++)
+					teamField.onWalkableChanged(layer.getChange(teamVersion));
+				DistanceField expected = new DistanceField(teamGrid, teamField.getRoot());
+				total++;
+				for (int i = 0; i < teamGrid.getMaxSize(); i++) {
+					if (teamField.getDistance(i) != expected.getDistance(i)) {
+						failures++;
+						break;
+					}
+				}
+				for (int agent = 0; agent < 2; agent++) {
+					total++;
+					if (!sameCells(overlays[agent].getGrid(), ownGrids[agent].getGrid()))
+						failures++;
+				}
+				if (overlayCopy != null) {
+					total++;
+					if (!sameCells(overlayCopy, ownCopy))
+						failures++;
+				}
+				for (int agent = 0; agent < 2; agent++) {
+					for (int q = 0; q < 5; q++) {
+						Coordinates source = new Coordinates(random.nextInt(n), random.nextInt(n));
+						Coordinates target = new Coordinates(random.nextInt(n), random.nextInt(n));
+						if (!ownGrids[agent].getGrid().isWalkable(source) || !ownGrids[agent].getGrid().isWalkable(target))
+							continue;
+						total++;
+						if (Maps.cost(source, overlays[agent].FindPath(source, target)) != Maps.cost(source,
+								ownGrids[agent].FindPath(source, target)))
+							failures++;
+					}
+				}
+			}
+		}
+		report("Overlays on one layer vs own grids, and the team field", failures, total);
+	}
+
+	/**
+	 * One agent finds most obstacles of a maze, another one builds landmarks
+	 * on its own overlay knowing few of them and keeps repairing them as it
+	 * learns more. Its estimates must never exceed its own costs, and ALT
+	 * must find paths as short as the octile distance does. Landmarks built
+	 * on the team's view are only measured, they can overestimate.
+	 */
+	private static void landmarkOverlays() {
+		Random random = new Random(13);
+		boolean[][] blocked = Maps.maze5050();
+		int width = blocked.length;
+		int height = blocked[0].length;
+		List<Coordinates> obstacles = new ArrayList<Coordinates>();
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				if (blocked[x][y])
+					obstacles.add(new Coordinates(x, y));
+			}
+		}
+		StaticLayer layer = new StaticLayer(width, height);
+		Grid team = new Grid(layer, true);
+		Pathfinding pathfinding = new Pathfinding(new Grid(layer, true));
+		Grid grid = pathfinding.getGrid();
+		for (Coordinates obstacle : obstacles) {
+			if (random.nextInt(10) != 0)
+				team.setNodeWalkable(obstacle, false);
+			if (random.nextInt(10) == 0)
+				grid.setNodeWalkable(obstacle, false);
+		}
+		LandmarkHeuristic heuristic = new LandmarkHeuristic(grid, LandmarkHeuristic.DEFAULT_LANDMARK_COUNT);
+		LandmarkHeuristic teamHeuristic = new LandmarkHeuristic(team, LandmarkHeuristic.DEFAULT_LANDMARK_COUNT);
+
+		int failures = 0;
+		int total = 0;
+		int teamOverestimates = 0;
+		int targets = 0;
+		for (int round = 0; round < 5; round++) {
+			for (int k = 0; k < obstacles.size() / 10; k++) {
+				Coordinates obstacle = obstacles.get(random.nextInt(obstacles.size()));
+				if (grid.setNodeWalkable(obstacle, false))
+					heuristic.onWalkableChanged(grid.getIndex(obstacle.getX(), obstacle.getY()));
+			}
+			for (int q = 0; q < 20; q++) {
+				int target = random.nextInt(grid.getMaxSize());
+				if (!grid.isWalkable(target))
+					continue;
+				DistanceField costs = new DistanceField(grid, target);
+				total++;
+				targets++;
+				boolean overestimated = false;
+				boolean teamOverestimated = false;
+				for (int node = 0; node < grid.getMaxSize(); node++) {
+					if (costs.getDistance(node) >= DistanceField.INFINITY)
+						continue;
+					overestimated |= heuristic.estimate(node, target) > costs.getDistance(node);
+					teamOverestimated |= teamHeuristic.estimate(node, target) > costs.getDistance(node);
+				}
+				if (overestimated)
+					failures++;
+				if (teamOverestimated)
+					teamOverestimates++;
+			}
+			for (int q = 0; q < 50; q++) {
+				Coordinates source = new Coordinates(random.nextInt(width), random.nextInt(height));
+				Coordinates target = new Coordinates(random.nextInt(width), random.nextInt(height));
+				if (!grid.isWalkable(source) || !grid.isWalkable(target))
+					continue;
+				total++;
+				pathfinding.setHeuristic(null);
+				int expected = Maps.cost(source, pathfinding.FindPath(source, target));
+				pathfinding.setHeuristic(heuristic);
+				if (expected != Maps.cost(source, pathfinding.FindPath(source, target)))
+					failures++;
+			}
+		}
+		report("ALT on an overlay knowing fewer obstacles than the team", failures, total);
+		System.out.printf("       landmarks of the team overestimated towards %d/%d targets%n", teamOverestimates, targets);
+	}
+
+	private static boolean sameCells(Grid grid, Grid expected) {
+		for (int i = 0; i < expected.getMaxSize(); i++) {
+			if (grid.isWalkable(i) != expected.isWalkable(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Walks agents to random targets like Recruiting does: the search is
+	 * resumed with a small budget every tick, the agent takes the best
+	 * effort step until the path is found and then follows it.
+	 */
+	private static void budgetedWalks() {
+		Random random = new Random(10);
+		int n = 80;
+		int failures = 0;
+		int total = 0;
+		long extraCost = 0;
+		for (int walk = 0; walk < 40; walk++) {
+			boolean[][] blocked = Maps.random(n, 0.25, walk);
+			Pathfinding pathfinding = Maps.pathfinding(blocked);
+			Grid grid = pathfinding.getGrid();
+			List<Coordinates> free = Maps.free(blocked);
+			Coordinates source = free.get(random.nextInt(free.size()));
+			Coordinates target = free.get(random.nextInt(free.size()));
+			int shortest = Maps.cost(source, pathfinding.FindPath(source, target));
+			if (shortest <= 0)
+				continue;
+
+			total++;
+			PathSearch search = pathfinding.StartSearch(source, target);
+			Coordinates current = source;
+			int cost = 0;
+			boolean valid = true;
+			for (int tick = 0; tick < 10 * n && valid && !current.equals(target); tick++) {
+				search.resume(50);
+				Coordinates next;
+				Path rest = search.getPathFrom(current);
+				if (rest != null)
+					next = rest.get(0);
+				else
+					next = search.getNextStep(current);
+				int dx = Math.abs(next.getX() - current.getX());
+				int dy = Math.abs(next.getY() - current.getY());
+				valid = dx <= 1 && dy <= 1 && grid.isWalkable(next);
+				cost += dx + dy == 2 ? 14 : 10 * (dx + dy);
+				current = next;
+			}
+			search.release();
+			if (!valid || !current.equals(target))
+				failures++;
+			else
+				extraCost += cost - shortest;
+		}
+		report("Walks with a budget of 50 reach the target", failures, total);
+		System.out.printf("       walked %.1f cost units more than the shortest path on average%n",
+				(double) extraCost / (total - failures));
+	}
+
+	/**
+	 * Submits searches on copies of overlay grids, then changes the layer
+	 * and the overlays before collecting them. Each result must cost what
+	 * the search on the grid did before the changes.
+	 */
+	private static void async() throws InterruptedException, ExecutionException {
+		Random random = new Random(11);
+		int n = 80;
+		int failures = 0;
+		int total = 0;
+		for (int map = 0; map < 8; map++) {
+			StaticLayer layer = new StaticLayer(n, n);
+			Pathfinding[] agents = new Pathfinding[2];
+			for (int agent = 0; agent < 2; agent++) {
+				agents[agent] = new Pathfinding(new Grid(layer, true));
+				for (Coordinates cell : Maps.free(Maps.random(n, 0.75, random.nextLong())))
+					agents[agent].getGrid().setNodeWalkable(cell, false);
+			}
+			List<Coordinates> cells = Maps.free(Maps.random(n, 0, 1));
+			for (int q = 0; q < 10; q++) {
+				int[] expected = new int[2];
+				Coordinates[][] queries = new Coordinates[2][];
+				List<Future<Path>> results = new ArrayList<Future<Path>>();
+				for (int agent = 0; agent < 2; agent++) {
+					Grid grid = agents[agent].getGrid();
+					queries[agent] = new Coordinates[] { cells.get(random.nextInt(cells.size())),
+							cells.get(random.nextInt(cells.size())) };
+					expected[agent] = Maps.cost(queries[agent][0], agents[agent].FindPath(queries[agent][0], queries[agent][1]));
+					results.add(PathService.submit(grid.copy(), queries[agent][0], queries[agent][1], q % 2 == 1));
+				}
+				for (int agent = 0; agent < 2; agent++) {
+					for (int k = 0; k < 200; k++) {
+						Coordinates cell = cells.get(random.nextInt(cells.size()));
+						agents[agent].getGrid().setNodeWalkable(cell, !agents[agent].getGrid().isWalkable(cell));
+					}
+				}
+				for (int agent = 0; agent < 2; agent++) {
+					total++;
+					if (Maps.cost(queries[agent][0], results.get(agent).get()) != expected[agent])
+						failures++;
+				}
+			}
+		}
+		report("Async paths vs the grid when submitted", failures, total);
+	}
+
+	/**
+	 * Moves 40 occupied nodes every tick and compares A*, JPS and D* Lite
+	 * on the grid reading the bit set with A* on a grid where the occupied
+	 * nodes are obstacles. D* Lite is told about the nodes whose occupancy
+	 * changed, like AStar.setOccupied does.
+	 */
+	private static void occupancy() {
+		Random random = new Random(12);
+		int n = 60;
+		boolean[][] blocked = Maps.random(n, 0.2, 3);
+		List<Coordinates> free = Maps.free(blocked);
+		Pathfinding pathfinding = Maps.pathfinding(blocked);
+		Grid grid = pathfinding.getGrid();
+		JumpPointSearch jps = new JumpPointSearch(grid);
+		DStarLite dStarLite = new DStarLite(grid);
+		HierarchicalPathfinding hierarchical = new HierarchicalPathfinding(pathfinding);
+		OccupancyLayer layer = new OccupancyLayer(n, n);
+		int failures = 0;
+		int total = 0;
+		int hierarchicalFailures = 0;
+		long[] previous = layer.createBitSet();
+		for (int tick = 0; tick < 600; tick++) {
+			long[] occupied = layer.createBitSet();
+			boolean[][] reference = new boolean[n][];
+			for (int x = 0; x < n; x++)
+				reference[x] = blocked[x].clone();
+			for (int i = 0; i < 40; i++) {
+				Coordinates cell = free.get(random.nextInt(free.size()));
+				OccupancyLayer.set(occupied, grid.getIndex(cell.getX(), cell.getY()));
+				reference[cell.getX()][cell.getY()] = true;
+			}
+			grid.setOccupied(occupied, -1);
+			for (int word = 0; word < occupied.length; word++) {
+				for (long diff = previous[word] ^ occupied[word]; diff != 0; diff &= diff - 1)
+					dStarLite.onWalkableChanged((word << 6) + Long.numberOfTrailingZeros(diff));
+			}
+			previous = occupied;
+
+			List<Coordinates> referenceFree = Maps.free(reference);
+			Coordinates source = referenceFree.get(random.nextInt(referenceFree.size()));
+			Coordinates target = referenceFree.get(random.nextInt(referenceFree.size()));
+			int expected = Maps.cost(source, Maps.pathfinding(reference).FindPath(source, target));
+			total++;
+			if (Maps.cost(source, pathfinding.FindPath(source, target)) != expected
+					|| Maps.cost(source, jps.FindPath(source, target)) != expected
+					|| Maps.cost(source, dStarLite.FindPath(source, target)) != expected)
+				failures++;
+			Path path = hierarchical.FindPath(source, target);
+			if ((expected < 0) != (path == null) || path != null && (!reaches(source, path, target) || crosses(path, reference)))
+				hierarchicalFailures++;
+		}
+		report("A*, JPS and D* Lite around occupied nodes", failures, total);
+		report("HPA* detours around occupied nodes", hierarchicalFailures, total);
+	}
+
+	/**
+	 * Changes obstacles of a world whose table is built: the table must be
+	 * dropped, and the one built once the layer settled must answer like A*
+	 * on the new obstacles.
+	 */
+	private static void firstMovesAfterChanges() throws InterruptedException {
+		Random random = new Random(17);
+		boolean[][] blocked = Maps.random(60, 0.2, 11);
+		int n = blocked.length;
+		Object world = new Object();
+		StaticLayer layer = StaticLayer.forWorld(world, n, n);
+		Grid grid = new Grid(layer);
+		Maps.block(grid, blocked);
+		Pathfinding pathfinding = new Pathfinding(grid);
+
+		int failures = 0;
+		int total = 0;
+		for (int round = 0; round < 3; round++) {
+			FirstMoveTable table = FirstMoveTable.forWorld(world, n, n);
+			table.awaitBuild();
+			for (int k = 0; k < 20; k++) {
+				int x = random.nextInt(n);
+				int y = random.nextInt(n);
+				blocked[x][y] = !blocked[x][y];
+				grid.setNodeWalkable(new Coordinates(x, y), !blocked[x][y]);
+			}
+			grid.refresh();
+			int version = layer.getSnapshot().getVersion();
+			total++;
+			if (FirstMoveTable.forWorld(world, n, n).isValid(version))
+				failures++;
+			Thread.sleep(FirstMoveTable.SETTLE_TIME_MS + 50);
+			table = FirstMoveTable.forWorld(world, n, n);
+			total++;
+			if (!table.awaitBuild() || !table.isValid(version)) {
+				failures++;
+				continue;
+			}
+			for (Coordinates[] query : PlannerBenchmark.queries(blocked, 300, round)) {
+				total++;
+				Path path = table.getPath(grid.getIndex(query[0].getX(), query[0].getY()),
+						grid.getIndex(query[1].getX(), query[1].getY()));
+				if (Maps.cost(query[0], pathfinding.FindPath(query[0], query[1])) != Maps.cost(query[0], path)
+						|| path != null && !reaches(query[0], path, query[1]))
+					failures++;
+			}
+		}
+		report("First move table rebuilt after obstacles change", failures, total);
+	}
+
+	private static void firstMoves(String label, boolean[][] blocked) throws InterruptedException {
+		int n = blocked.length;
+		StaticLayer layer = new StaticLayer(n, n);
+		Grid grid = new Grid(layer);
+		Maps.block(grid, blocked);
+		FirstMoveTable table = new FirstMoveTable(layer);
+		if (!table.awaitBuild())
+			throw new IllegalStateException("First move table wasn't built", table.getFailure());
+		Pathfinding pathfinding = new Pathfinding(grid);
+
+		int failures = 0;
+		Coordinates[][] queries = PlannerBenchmark.queries(blocked, 1000, 2);
+		for (Coordinates[] query : queries) {
+			Path path = table.getPath(grid.getIndex(query[0].getX(), query[0].getY()),
+					grid.getIndex(query[1].getX(), query[1].getY()));
+			if (Maps.cost(query[0], pathfinding.FindPath(query[0], query[1])) != Maps.cost(query[0], path)
+					|| path != null && !reaches(query[0], path, query[1]))
+				failures++;
+		}
+		report("First move table cost, " + label, failures, queries.length);
+	}
+
+	private static boolean followsField(Grid grid, DistanceField field, int node) {
+		int next = field.getNextNode(node);
+		if (next < 0)
+			return node == field.getRoot() || field.getDistance(node) == DistanceField.INFINITY;
+		return grid.isWalkable(next) && Math.abs(grid.getX(next) - grid.getX(node)) <= 1
+				&& Math.abs(grid.getY(next) - grid.getY(node)) <= 1
+				&& field.getDistance(next) + grid.getDistance(node, next) == field.getDistance(node);
+	}
+
+	/**
+	 * Shadowcasting must visit each cell once and be symmetric between floor
+	 * cells. On an open map it must also see every cell of the square, like
+	 * casting a ray to each of them.
+	 */
+	private static void fieldOfView(String label, boolean[][] blocked, boolean compareRays) {
+		int n = blocked.length;
+		repast.simphony.space.grid.Grid<Object> world = Maps.world(blocked);
+		ObstacleMap obstacles = ObstacleMap.forGrid(world);
+		Random random = new Random(1);
+		RayHit hit = new RayHit();
+		int duplicates = 0;
+		int origins = 0;
+		int asymmetric = 0;
+		int pairs = 0;
+		int rayMismatches = 0;
+		int cells = 0;
+		for (int radius : new int[] { 2, 5, 10, 20 }) {
+			for (int i = 0; i < 50; i++) {
+				int originX = random.nextInt(n);
+				int originY = random.nextInt(n);
+				if (blocked[originX][originY])
+					continue;
+				int[] visits = visits(obstacles, new Coordinates(originX, originY), radius);
+				origins++;
+				for (int visit : visits) {
+					if (visit > 1) {
+						duplicates++;
+						break;
+					}
+				}
+
+				for (int k = 0; k < 20; k++) {
+					int x = originX + random.nextInt(2 * radius + 1) - radius;
+					int y = originY + random.nextInt(2 * radius + 1) - radius;
+					if (x < 0 || y < 0 || x >= n || y >= n || blocked[x][y])
+						continue;
+					pairs++;
+					int[] back = visits(obstacles, new Coordinates(x, y), radius);
+					if ((visits[y * n + x] > 0) != (back[originY * n + originX] > 0))
+						asymmetric++;
+				}
+
+				if (!compareRays)
+					continue;
+				for (int x = Math.max(0, originX - radius); x <= Math.min(n - 1, originX + radius); x++) {
+					for (int y = Math.max(0, originY - radius); y <= Math.min(n - 1, originY + radius); y++) {
+						cells++;
+						boolean seenByRay = !RayTracing.trace(world, obstacles, originX, originY, x, y, true, null, hit);
+						if (seenByRay != (visits[y * n + x] > 0))
+							rayMismatches++;
+					}
+				}
+			}
+		}
+		report("Shadowcasting visits each cell once, " + label, duplicates, origins);
+		report("Shadowcasting is symmetric, " + label, asymmetric, pairs);
+		if (compareRays)
+			report("Shadowcasting sees what rays see, " + label, rayMismatches, cells);
+	}
+
+	private static int[] visits(ObstacleMap obstacles, Coordinates origin, int radius) {
+		final int width = obstacles.getWidth();
+		final int[] visits = new int[width * obstacles.getHeight()];
+		ShadowCasting.compute(obstacles, origin, radius, new ShadowCasting.Visitor() {
+			@Override
+			public void visit(int x, int y) {
+				visits[y * width + x]++;
+			}
+		});
+		return visits;
+	}
+
+	private static boolean crosses(Path path, boolean[][] blocked) {
+		for (int i = 0; i < path.size(); i++) {
+			if (blocked[path.getX(i)][path.getY(i)])
+				return true;
+		}
+		return false;
+	}
+
+	private static boolean reaches(Coordinates source, Path path, Coordinates target) {
+		if (path.isEmpty())
+			return source.equals(target);
+		return path.get(path.size() - 1).equals(target);
+	}
+}
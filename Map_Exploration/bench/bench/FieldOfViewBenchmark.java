@@ -0,0 +1,78 @@
+package bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Random;
+
+import repast.simphony.space.grid.Grid;
+import utils.Coordinates;
+import utils.ObstacleMap;
+import utils.raytrace.RayTracing;
+import utils.raytrace.ShadowCasting;
+
+/**
+ * Time per field of view of one ray cast to every cell of the square
+ * around the origin, as Matrix.updateMatrix used to, and of
+ * shadowcasting, with the number of cells each of them sees and the bytes
+ * shadowcasting allocates. Allocation is read from the thread's allocated
+ * bytes counter of the HotSpot JVM, so it needs one.
+ * Arguments: side of the map (120), density of obstacles (0.15) and
+ * vision radius (10).
+ */
+public class FieldOfViewBenchmark {
+
+	private static final int ORIGINS = 200;
+	private static final int ROUNDS = 5;
+	private static final int WARMUP_ROUNDS = 3;
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 120;
+		double density = args.length > 1 ? Double.parseDouble(args[1]) : 0.15;
+		final int radius = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+
+		boolean[][] blocked = Maps.random(n, density, 9);
+		Grid<Object> world = Maps.world(blocked);
+		ObstacleMap obstacles = ObstacleMap.forGrid(world);
+		List<Coordinates> free = Maps.free(blocked);
+		Random random = new Random(9);
+		Coordinates[] origins = new Coordinates[ORIGINS];
+		for (int i = 0; i < ORIGINS; i++)
+			origins[i] = free.get(random.nextInt(free.size()));
+		final long[] seenByShadowcasting = new long[1];
+		ShadowCasting.Visitor counter = new ShadowCasting.Visitor() {
+			@Override
+			public void visit(int x, int y) {
+				seenByShadowcasting[0]++;
+			}
+		};
+
+		for (int round = 0; round < ROUNDS; round++) {
+			long seenByRays = 0;
+			long time0 = System.nanoTime();
+			for (Coordinates origin : origins) {
+				for (int x = Math.max(0, origin.getX() - radius); x <= Math.min(n - 1, origin.getX() + radius); x++) {
+					for (int y = Math.max(0, origin.getY() - radius); y <= Math.min(n - 1, origin.getY() + radius); y++) {
+						if (RayTracing.trace(world, origin, new Coordinates(x, y), true).getHitObstacle() == null)
+							seenByRays++;
+					}
+				}
+			}
+			long time1 = System.nanoTime();
+			seenByShadowcasting[0] = 0;
+			long bytes1 = threads.getThreadAllocatedBytes(thread);
+			for (Coordinates origin : origins)
+				ShadowCasting.compute(obstacles, origin, radius, counter);
+			long bytes2 = threads.getThreadAllocatedBytes(thread);
+			long time2 = System.nanoTime();
+
+			if (round >= WARMUP_ROUNDS)
+				System.out.printf("r=%d rays %.0f us, %.0f cells | shadowcasting %.0f us, %.0f cells, %.0f B%n", radius,
+						(time1 - time0) / 1e3 / ORIGINS, seenByRays / (double) ORIGINS,
+						(time2 - time1) / 1e3 / ORIGINS, seenByShadowcasting[0] / (double) ORIGINS,
+						(bytes2 - bytes1) / (double) ORIGINS);
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package bench;
+
+import java.util.List;
+import java.util.Random;
+
+import algorithms.astar.FirstMoveTable;
+import algorithms.astar.Grid;
+import algorithms.astar.Path;
+import algorithms.astar.Pathfinding;
+import algorithms.astar.StaticLayer;
+import utils.Coordinates;
+
+/**
+ * Builds a first move table on a random map and compares its queries with
+ * A*: build time, size, time for the next step and the whole path, and
+ * paths whose cost differs from A*.
+ * Arguments: side of the map (100) and density of obstacles (0.2).
+ */
+public class FirstMoveTableBenchmark {
+
+	private static final int QUERIES = 3000;
+
+	// Keeps the next step queries from being optimized away.
+	static volatile long sink;
+
+	public static void main(String[] args) throws InterruptedException {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		double density = args.length > 1 ? Double.parseDouble(args[1]) : 0.2;
+
+		boolean[][] blocked = Maps.random(n, density, 11);
+		StaticLayer layer = new StaticLayer(n, n);
+		Grid grid = new Grid(layer);
+		Maps.block(grid, blocked);
+
+		long memoryBefore = Maps.usedMemory();
+		long start = System.nanoTime();
+		FirstMoveTable table = new FirstMoveTable(layer);
+		if (!table.awaitBuild())
+			throw new IllegalStateException("First move table wasn't built", table.getFailure());
+		double buildTime = (System.nanoTime() - start) / 1e9;
+		long memory = Maps.usedMemory() - memoryBefore;
+
+		Pathfinding pathfinding = new Pathfinding(grid);
+		List<Coordinates> free = Maps.free(blocked);
+		Random random = new Random(2);
+		long timeAStar = 0;
+		long timeNextStep = 0;
+		long timePath = 0;
+		int mismatches = 0;
+		for (int i = 0; i < QUERIES; i++) {
+			Coordinates source = free.get(random.nextInt(free.size()));
+			Coordinates target = free.get(random.nextInt(free.size()));
+			int sourceNode = grid.getIndex(source.getX(), source.getY());
+			int targetNode = grid.getIndex(target.getX(), target.getY());
+
+			long t0 = System.nanoTime();
+			Path expected = pathfinding.FindPath(source, target);
+			long t1 = System.nanoTime();
+			sink += table.getNextNode(sourceNode, targetNode);
+			long t2 = System.nanoTime();
+			Path path = table.getPath(sourceNode, targetNode);
+			long t3 = System.nanoTime();
+
+			timeAStar += t1 - t0;
+			timeNextStep += t2 - t1;
+			timePath += t3 - t2;
+			if (Maps.cost(source, expected) != Maps.cost(source, path))
+				mismatches++;
+		}
+
+		System.out.printf("%dx%d density %.2f: built in %.1f s on %d cores, %d runs (%.1f per source), heap %.1f MB%n", n,
+				n, density, buildTime, Runtime.getRuntime().availableProcessors(), table.getRunCount(),
+				table.getRunCount() / (double) free.size(), memory / 1e6);
+		System.out.printf("next step %.2f us, whole path %.1f us, A* %.1f us; cost mismatches %d/%d%n",
+				timeNextStep / 1e3 / QUERIES, timePath / 1e3 / QUERIES, timeAStar / 1e3 / QUERIES, mismatches, QUERIES);
+	}
+}
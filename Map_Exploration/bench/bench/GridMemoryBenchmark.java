@@ -0,0 +1,97 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import algorithms.astar.Grid;
+import algorithms.astar.StaticLayer;
+import utils.Coordinates;
+
+/**
+ * Heap used by the agents' grids over one shared layer, in bytes per cell
+ * per agent: right after creating them, after each agent has learned
+ * obstacles around its own part of the map, and while they all explore a
+ * whole map with 20% obstacles, each finding them in its own order.
+ * Arguments: side of the map (200), agents (20) and obstacles learned by
+ * each agent (200).
+ */
+public class GridMemoryBenchmark {
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int agents = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		int learned = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+		double cells = (double) n * n * agents;
+
+		long before = Maps.usedMemory();
+		StaticLayer layer = new StaticLayer(n, n);
+		Grid[] grids = new Grid[agents];
+		for (int i = 0; i < agents; i++)
+			grids[i] = new Grid(layer, true);
+		long created = Maps.usedMemory();
+
+		// Each agent explores a square around its own start.
+		Random random = new Random(1);
+		int side = Math.max(1, n / 4);
+		for (int i = 0; i < agents; i++) {
+			int startX = random.nextInt(n - side + 1);
+			int startY = random.nextInt(n - side + 1);
+			for (int j = 0; j < learned; j++)
+				grids[i].setNodeWalkable(new Coordinates(startX + random.nextInt(side), startY + random.nextInt(side)),
+						false);
+		}
+		long explored = Maps.usedMemory();
+
+		System.out.printf("%dx%d, %d agents: %.3f bytes/cell/agent when created, %.3f after learning %d obstacles each%n",
+				n, n, agents, (created - before) / cells, (explored - before) / cells, learned);
+		// Keeps the grids reachable until the end.
+		System.out.println(grids.length + " grids");
+
+		exploreMap(n, agents);
+	}
+
+	/**
+	 * Every agent learns every obstacle of the map, in turns of one obstacle
+	 * each, and the heap is measured once every agent has learned a quarter,
+	 * half and all of them.
+	 */
+	private static void exploreMap(int n, int agents) {
+		double cells = (double) n * n * agents;
+		List<Coordinates> obstacles = new ArrayList<Coordinates>();
+		boolean[][] blocked = Maps.random(n, 0.2, 2);
+		for (int x = 0; x < n; x++) {
+			for (int y = 0; y < n; y++) {
+				if (blocked[x][y])
+					obstacles.add(new Coordinates(x, y));
+			}
+		}
+		Random random = new Random(2);
+		List<List<Coordinates>> orders = new ArrayList<List<Coordinates>>();
+		for (int i = 0; i < agents; i++) {
+			List<Coordinates> order = new ArrayList<Coordinates>(obstacles);
+			Collections.shuffle(order, random);
+			orders.add(order);
+		}
+
+		long before = Maps.usedMemory();
+		StaticLayer layer = new StaticLayer(n, n);
+		Grid[] grids = new Grid[agents];
+		for (int i = 0; i < agents; i++)
+			grids[i] = new Grid(layer, true);
+		StringBuilder line = new StringBuilder(String.format("%dx%d, %d agents exploring %d obstacles:", n, n,
+				agents, obstacles.size()));
+		int learned = 0;
+		for (int quarter = 1; quarter <= 4; quarter++) {
+			for (; learned < obstacles.size() * quarter / 4; learned++) {
+				for (int i = 0; i < agents; i++)
+					grids[i].setNodeWalkable(orders.get(i).get(learned), false);
+			}
+			line.append(String.format(" %.3f at %d%%", (Maps.usedMemory() - before) / cells, quarter * 25));
+		}
+		System.out.println(line + " bytes/cell/agent");
+		// Keeps the grids reachable until the end.
+		System.out.println(grids.length + " grids");
+	}
+}
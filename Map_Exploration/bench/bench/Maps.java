@@ -0,0 +1,177 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import algorithms.astar.Grid;
+import algorithms.astar.Path;
+import algorithms.astar.Pathfinding;
+import entities.Obstacle;
+import repast.simphony.context.Context;
+import repast.simphony.context.DefaultContext;
+import repast.simphony.context.space.grid.GridFactoryFinder;
+import repast.simphony.space.grid.GridBuilderParameters;
+import repast.simphony.space.grid.SimpleGridAdder;
+import repast.simphony.space.grid.StrictBorders;
+import utils.Coordinates;
+import utils.ObjectSetups;
+
+/**
+ * Maps used by the benchmarks, as blocked[x][y]: random ones with a fixed
+ * seed and the mazes of ObjectSetups.
+ */
+public class Maps {
+
+	private Maps() {
+	}
+
+	/**
+	 * @param n side of the map.
+	 * @param density chance of each cell being blocked.
+	 * @param seed
+	 * @return blocked[x][y].
+	 */
+	public static boolean[][] random(int n, double density, long seed) {
+		Random random = new Random(seed);
+		boolean[][] blocked = new boolean[n][n];
+		for (int x = 0; x < n; x++) {
+			for (int y = 0; y < n; y++)
+				blocked[x][y] = random.nextDouble() < density;
+		}
+		return blocked;
+	}
+
+	/**
+	 * @return the 15x15 maze of ObjectSetups.
+	 */
+	public static boolean[][] maze1515() {
+		Context<Object> context = new DefaultContext<Object>();
+		ObjectSetups.Maze1515(context, coordinates(15));
+		return obstacles(context, 15);
+	}
+
+	/**
+	 * @return the 50x50 maze of ObjectSetups.
+	 */
+	public static boolean[][] maze5050() {
+		Context<Object> context = new DefaultContext<Object>();
+		ObjectSetups.Maze5050(context, coordinates(50));
+		return obstacles(context, 50);
+	}
+
+	private static List<Coordinates> coordinates(int n) {
+		List<Coordinates> coordinates = new ArrayList<Coordinates>();
+		for (int y = 0; y < n; y++) {
+			for (int x = 0; x < n; x++)
+				coordinates.add(new Coordinates(x, y));
+		}
+		return coordinates;
+	}
+
+	private static boolean[][] obstacles(Context<Object> context, int n) {
+		boolean[][] blocked = new boolean[n][n];
+		for (Object obj : context) {
+			if (obj instanceof Obstacle) {
+				Coordinates coordinates = ((Obstacle) obj).getCoordinates();
+				if (coordinates.getX() < n && coordinates.getY() < n)
+					blocked[coordinates.getX()][coordinates.getY()] = true;
+			}
+		}
+		return blocked;
+	}
+
+	/**
+	 * @return a world grid with an Obstacle on every blocked cell.
+	 */
+	public static repast.simphony.space.grid.Grid<Object> world(boolean[][] blocked) {
+		int n = blocked.length;
+		Context<Object> context = new DefaultContext<Object>();
+		repast.simphony.space.grid.Grid<Object> grid = GridFactoryFinder.createGridFactory(null).createGrid("grid",
+				context, new GridBuilderParameters<Object>(new StrictBorders(), new SimpleGridAdder<Object>(), true,
+						n, blocked[0].length));
+		for (int x = 0; x < n; x++) {
+			for (int y = 0; y < blocked[x].length; y++) {
+				if (blocked[x][y]) {
+					Obstacle obstacle = new Obstacle(x, y);
+					context.add(obstacle);
+					grid.moveTo(obstacle, x, y);
+				}
+			}
+		}
+		return grid;
+	}
+
+	/**
+	 * @return the cells that aren't blocked.
+	 */
+	public static List<Coordinates> free(boolean[][] blocked) {
+		List<Coordinates> free = new ArrayList<Coordinates>();
+		for (int x = 0; x < blocked.length; x++) {
+			for (int y = 0; y < blocked[x].length; y++) {
+				if (!blocked[x][y])
+					free.add(new Coordinates(x, y));
+			}
+		}
+		return free;
+	}
+
+	/**
+	 * Sets the blocked cells as not walkable on the grid.
+	 */
+	public static void block(Grid grid, boolean[][] blocked) {
+		for (int x = 0; x < blocked.length; x++) {
+			for (int y = 0; y < blocked[x].length; y++) {
+				if (blocked[x][y])
+					grid.setNodeWalkable(new Coordinates(x, y), false);
+			}
+		}
+	}
+
+	/**
+	 * @return a pathfinding with the blocked cells set.
+	 */
+	public static Pathfinding pathfinding(boolean[][] blocked) {
+		Grid grid = new Grid(blocked.length, blocked[0].length);
+		block(grid, blocked);
+		return new Pathfinding(grid);
+	}
+
+	/**
+	 * Cost of a path with straight steps costing 10 and diagonal ones 14,
+	 * checking that every step moves to a neighbour.
+	 * @return the cost, or -1 if there is no path.
+	 */
+	public static int cost(Coordinates source, Path path) {
+		if (path == null)
+			return -1;
+		int cost = 0;
+		Coordinates previous = source;
+		for (int i = 0; i < path.size(); i++) {
+			Coordinates step = path.get(i);
+			int dx = Math.abs(step.getX() - previous.getX());
+			int dy = Math.abs(step.getY() - previous.getY());
+			if (dx > 1 || dy > 1 || dx + dy == 0)
+				throw new IllegalStateException("Bad step from " + previous + " to " + step);
+			cost += dx == 1 && dy == 1 ? 14 : 10;
+			previous = step;
+		}
+		return cost;
+	}
+
+	/**
+	 * @return memory in use after collecting garbage a few times.
+	 */
+	public static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
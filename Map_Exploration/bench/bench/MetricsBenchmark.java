@@ -0,0 +1,91 @@
+package bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Random;
+
+import algorithms.astar.Path;
+import algorithms.astar.Pathfinding;
+import algorithms.astar.PathfindingMetrics;
+import algorithms.astar.SearchState;
+import utils.Coordinates;
+
+/**
+ * Bytes allocated and time per query of small local A* searches, like the
+ * detours of the path follower, made plain and measured by
+ * PathfindingMetrics. Allocation is read from the thread's allocated bytes
+ * counter of the HotSpot JVM, so it needs one.
+ * Arguments: number of queries per round (200000).
+ */
+public class MetricsBenchmark {
+
+	private static final int PAIRS = 1000;
+	private static final int MARGIN = 3;
+	private static final int ROUNDS = 10;
+	private static final int WARMUP_ROUNDS = 7;
+
+	// Keeps the searches from being optimized away.
+	static volatile long sink;
+
+	public static void main(String[] args) {
+		int queries = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+
+		int n = 60;
+		boolean[][] blocked = Maps.random(n, 0.1, 5);
+		Pathfinding pathfinding = Maps.pathfinding(blocked);
+		SearchState state = SearchState.forCurrentThread(n * n);
+		List<Coordinates> free = Maps.free(blocked);
+		Random random = new Random(5);
+		Coordinates[] sources = new Coordinates[PAIRS];
+		Coordinates[] targets = new Coordinates[PAIRS];
+		for (int i = 0; i < PAIRS; i++) {
+			Coordinates source = free.get(random.nextInt(free.size()));
+			Coordinates target;
+			do {
+				target = free.get(random.nextInt(free.size()));
+			} while (Math.abs(target.getX() - source.getX()) > 4 || Math.abs(target.getY() - source.getY()) > 4);
+			sources[i] = source;
+			targets[i] = target;
+		}
+		String key = PathfindingMetrics.getKey(MetricsBenchmark.class, "computeLocalPath");
+
+		for (int round = 0; round < ROUNDS; round++) {
+			long length = 0;
+			long bytes0 = threads.getThreadAllocatedBytes(thread);
+			long time0 = System.nanoTime();
+			for (int i = 0; i < queries; i++) {
+				Path path = localPath(pathfinding, state, sources[i % PAIRS], targets[i % PAIRS]);
+				length += path != null ? path.size() : 0;
+			}
+			long bytes1 = threads.getThreadAllocatedBytes(thread);
+			long time1 = System.nanoTime();
+			for (int i = 0; i < queries; i++) {
+				PathfindingMetrics.Query query = PathfindingMetrics.begin(key);
+				Path path = query.end(localPath(pathfinding, state, sources[i % PAIRS], targets[i % PAIRS]));
+				length += path != null ? path.size() : 0;
+			}
+			long bytes2 = threads.getThreadAllocatedBytes(thread);
+			long time2 = System.nanoTime();
+			sink += length;
+			PathfindingMetrics.reset();
+
+			if (round >= WARMUP_ROUNDS)
+				System.out.printf("plain %.1f B/query %.0f ns/query | measured %.1f B/query %.0f ns/query%n",
+						(bytes1 - bytes0) / (double) queries, (time1 - time0) / (double) queries,
+						(bytes2 - bytes1) / (double) queries, (time2 - time1) / (double) queries);
+		}
+	}
+
+	private static Path localPath(Pathfinding pathfinding, SearchState state, Coordinates source,
+			Coordinates target) {
+		int n = pathfinding.getGrid().getGridSizeX();
+		return pathfinding.FindPath(source, target, state,
+				Math.max(0, Math.min(source.getX(), target.getX()) - MARGIN),
+				Math.max(0, Math.min(source.getY(), target.getY()) - MARGIN),
+				Math.min(n - 1, Math.max(source.getX(), target.getX()) + MARGIN),
+				Math.min(n - 1, Math.max(source.getY(), target.getY()) + MARGIN));
+	}
+}
@@ -0,0 +1,70 @@
+package bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Random;
+
+import algorithms.astar.JumpPointSearch;
+import algorithms.astar.Path;
+import algorithms.astar.Pathfinding;
+import utils.Coordinates;
+
+/**
+ * Bytes allocated and time per query of A* and Jump Point Search between
+ * random free cells of a random map. Allocation is read from the thread's
+ * allocated bytes counter of the HotSpot JVM, so it needs one.
+ * Arguments: side of the map (60) and density of obstacles (0.2).
+ */
+public class PathAllocationBenchmark {
+
+	private static final int QUERIES = 2000;
+	private static final int ROUNDS = 10;
+	private static final int WARMUP_ROUNDS = 7;
+
+	// Keeps the searches from being optimized away.
+	static volatile long sink;
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+		double density = args.length > 1 ? Double.parseDouble(args[1]) : 0.2;
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+
+		boolean[][] blocked = Maps.random(n, density, 7);
+		Pathfinding pathfinding = Maps.pathfinding(blocked);
+		JumpPointSearch jps = new JumpPointSearch(pathfinding.getGrid());
+		List<Coordinates> free = Maps.free(blocked);
+		Random random = new Random(7);
+		Coordinates[] sources = new Coordinates[QUERIES];
+		Coordinates[] targets = new Coordinates[QUERIES];
+		for (int i = 0; i < QUERIES; i++) {
+			sources[i] = free.get(random.nextInt(free.size()));
+			targets[i] = free.get(random.nextInt(free.size()));
+		}
+
+		for (int round = 0; round < ROUNDS; round++) {
+			long length = 0;
+			long bytes0 = threads.getThreadAllocatedBytes(thread);
+			long time0 = System.nanoTime();
+			for (int i = 0; i < QUERIES; i++) {
+				Path path = pathfinding.FindPath(sources[i], targets[i]);
+				length += path != null ? path.size() : 0;
+			}
+			long bytes1 = threads.getThreadAllocatedBytes(thread);
+			long time1 = System.nanoTime();
+			for (int i = 0; i < QUERIES; i++) {
+				Path path = jps.FindPath(sources[i], targets[i]);
+				length += path != null ? path.size() : 0;
+			}
+			long bytes2 = threads.getThreadAllocatedBytes(thread);
+			long time2 = System.nanoTime();
+			sink += length;
+
+			if (round >= WARMUP_ROUNDS)
+				System.out.printf("A* %.0f B/query %.1f us/query | JPS %.0f B/query %.1f us/query%n",
+						(bytes1 - bytes0) / (double) QUERIES, (time1 - time0) / 1e3 / QUERIES,
+						(bytes2 - bytes1) / (double) QUERIES, (time2 - time1) / 1e3 / QUERIES);
+		}
+	}
+}
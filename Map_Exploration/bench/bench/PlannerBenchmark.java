@@ -0,0 +1,509 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import algorithms.astar.CooperativePathfinding;
+import algorithms.astar.DStarLite;
+import algorithms.astar.DistanceField;
+import algorithms.astar.GoalTest;
+import algorithms.astar.Grid;
+import algorithms.astar.HierarchicalPathfinding;
+import algorithms.astar.JumpPointSearch;
+import algorithms.astar.LandmarkHeuristic;
+import algorithms.astar.OccupancyLayer;
+import algorithms.astar.Path;
+import algorithms.astar.PathSearch;
+import algorithms.astar.Pathfinding;
+import algorithms.astar.ReservationTable;
+import algorithms.astar.SearchState;
+import utils.Coordinates;
+
+/**
+ * Compares the planners AStar can use on the same queries: expanded nodes
+ * and time per search of A*, JPS, ALT and HPA*, and nodes expanded by A* and
+ * D* Lite when replanning a walk every step, and the cost of repairing
+ * a distance field against computing it again. Also times the nearest
+ * goal search against an A* search to every goal, walks two agents
+ * through a corridor with and without cooperative planning, and spreads a
+ * search for an unreachable target over ticks.
+ * Run with no arguments; the numbers depend on the machine, the ratios
+ * between planners are what matter.
+ */
+public class PlannerBenchmark {
+
+	private static final int WARMUP_ROUNDS = 3;
+
+	public static void main(String[] args) {
+		cornerToCorner(500, 20);
+
+		System.out.println();
+		System.out.println("A* vs JPS");
+		jumpPoints("open 100x100", Maps.random(100, 0, 1), 300);
+		jumpPoints("open 500x500", Maps.random(500, 0, 1), 50);
+		jumpPoints("random 10% 200x200", Maps.random(200, 0.1, 1), 300);
+		jumpPoints("random 30% 200x200", Maps.random(200, 0.3, 1), 300);
+		jumpPoints("Maze1515", Maps.maze1515(), 300);
+		jumpPoints("Maze5050", Maps.maze5050(), 300);
+
+		System.out.println();
+		System.out.println("Octile vs ALT");
+		landmarks("Maze1515", Maps.maze1515(), 2000);
+		landmarks("Maze5050", Maps.maze5050(), 2000);
+		landmarks("random 30% 200x200", Maps.random(200, 0.3, 1), 300);
+
+		System.out.println();
+		System.out.println("A* vs D* Lite, replanning every step");
+		incremental(100, 0);
+		incremental(100, 50);
+		incremental(300, 0);
+		incremental(300, 200);
+
+		System.out.println();
+		System.out.println("A* vs HPA*");
+		hierarchical("open 200x200", Maps.random(200, 0, 1), 300);
+		hierarchical("random 20% 200x200", Maps.random(200, 0.2, 1), 300);
+		hierarchical("random 20% 1000x1000", Maps.random(1000, 0.2, 1), 50);
+		hierarchical("Maze5050", Maps.maze5050(), 300);
+
+		System.out.println();
+		System.out.println("Distance field repair vs recompute");
+		distanceField(60, 4000);
+		distanceField(300, 4000);
+
+		System.out.println();
+		System.out.println("Nearest of 20 goals: one Dijkstra vs A* to each goal");
+		nearest(80, 600);
+
+		System.out.println();
+		System.out.println("2 agents crossing a 1-wide corridor with one passing bay");
+		corridor(false);
+		corridor(true);
+
+		System.out.println();
+		System.out.println("Unreachable target, one search vs 500 expansions per tick");
+		budgeted(500, 500);
+	}
+
+	/**
+	 * Corner to corner search on a map with a fifth of the cells blocked.
+	 */
+	private static void cornerToCorner(int n, int queries) {
+		boolean[][] blocked = Maps.random(n, 0.2, 1);
+		for (int i = 0; i < 2; i++) {
+			for (int j = 0; j < 2; j++) {
+				blocked[i][j] = false;
+				blocked[n - 1 - i][n - 1 - j] = false;
+			}
+		}
+		Pathfinding pathfinding = Maps.pathfinding(blocked);
+		Coordinates source = new Coordinates(0, 0);
+		Coordinates target = new Coordinates(n - 1, n - 1);
+		for (int i = 0; i < WARMUP_ROUNDS; i++)
+			pathfinding.FindPath(source, target);
+		long start = System.nanoTime();
+		int cost = 0;
+		for (int i = 0; i < queries; i++)
+			cost = Maps.cost(source, pathfinding.FindPath(source, target));
+		System.out.printf("%dx%d corner to corner: %.2f ms/search, cost %d%n", n, n,
+				(System.nanoTime() - start) / 1e6 / queries, cost);
+	}
+
+	private static void jumpPoints(String label, boolean[][] blocked, int count) {
+		Pathfinding pathfinding = Maps.pathfinding(blocked);
+		JumpPointSearch jps = new JumpPointSearch(pathfinding.getGrid());
+		Coordinates[][] queries = queries(blocked, count, 2);
+		SearchState state = SearchState.forCurrentThread(blocked.length * blocked[0].length);
+
+		long expandedAStar = 0;
+		long expandedJps = 0;
+		int mismatches = 0;
+		for (Coordinates[] query : queries) {
+			int costAStar = Maps.cost(query[0], pathfinding.FindPath(query[0], query[1], state));
+			expandedAStar += state.getExpandedCount();
+			int costJps = Maps.cost(query[0], jps.FindPath(query[0], query[1], state));
+			expandedJps += state.getExpandedCount();
+			if (costAStar != costJps)
+				mismatches++;
+		}
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			for (Coordinates[] query : queries) {
+				pathfinding.FindPath(query[0], query[1]);
+				jps.FindPath(query[0], query[1]);
+			}
+		}
+		long start = System.nanoTime();
+		for (Coordinates[] query : queries)
+			pathfinding.FindPath(query[0], query[1]);
+		double timeAStar = (System.nanoTime() - start) / 1e3 / count;
+		start = System.nanoTime();
+		for (Coordinates[] query : queries)
+			jps.FindPath(query[0], query[1]);
+		double timeJps = (System.nanoTime() - start) / 1e3 / count;
+
+		System.out.printf("%-20s A* %7.0f expanded %8.1f us | JPS %6.0f expanded %8.1f us | cost mismatches %d/%d%n",
+				label, (double) expandedAStar / count, timeAStar, (double) expandedJps / count, timeJps, mismatches,
+				count);
+	}
+
+	private static void landmarks(String label, boolean[][] blocked, int count) {
+		Pathfinding pathfinding = Maps.pathfinding(blocked);
+		long start = System.nanoTime();
+		LandmarkHeuristic heuristic = new LandmarkHeuristic(pathfinding.getGrid(),
+				LandmarkHeuristic.DEFAULT_LANDMARK_COUNT);
+		double buildTime = (System.nanoTime() - start) / 1e6;
+		Coordinates[][] queries = queries(blocked, count, 3);
+
+		long expandedOctile = 0;
+		long expandedAlt = 0;
+		long timeOctile = 0;
+		long timeAlt = 0;
+		int found = 0;
+		int mismatches = 0;
+		for (Coordinates[] query : queries) {
+			pathfinding.setHeuristic(null);
+			start = System.nanoTime();
+			int costOctile = Maps.cost(query[0], pathfinding.FindPath(query[0], query[1]));
+			timeOctile += System.nanoTime() - start;
+			int expanded = pathfinding.getExpandedCount();
+			pathfinding.setHeuristic(heuristic);
+			start = System.nanoTime();
+			int costAlt = Maps.cost(query[0], pathfinding.FindPath(query[0], query[1]));
+			timeAlt += System.nanoTime() - start;
+			if (costOctile < 0)
+				continue;
+			found++;
+			expandedOctile += expanded;
+			expandedAlt += pathfinding.getExpandedCount();
+			if (costOctile != costAlt)
+				mismatches++;
+		}
+		pathfinding.setHeuristic(null);
+
+		System.out.printf("%-20s %d landmarks in %.1f ms | octile %7.1f expanded %7.1f us | ALT %7.1f expanded %7.1f us | cost mismatches %d/%d%n",
+				label, heuristic.getLandmarkCount(), buildTime, (double) expandedOctile / found,
+				timeOctile / 1e3 / count, (double) expandedAlt / found, timeAlt / 1e3 / count, mismatches, found);
+	}
+
+	/**
+	 * Walks an agent corner to corner on a map with 15% of the cells
+	 * blocked, while blockers take a random step each turn. The path is
+	 * replanned after every step, from scratch with A* and by repairing
+	 * the D* Lite tree.
+	 */
+	private static void incremental(int n, int blockerCount) {
+		boolean[][] blocked = Maps.random(n, 0.15, 1);
+		blocked[0][0] = false;
+		blocked[n - 1][n - 1] = false;
+		Pathfinding pathfinding = Maps.pathfinding(blocked);
+		Grid grid = pathfinding.getGrid();
+		DStarLite dStarLite = new DStarLite(grid);
+		SearchState state = SearchState.forCurrentThread(n * n);
+		Coordinates source = new Coordinates(0, 0);
+		Coordinates target = new Coordinates(n - 1, n - 1);
+
+		List<Coordinates> free = Maps.free(blocked);
+		Random random = new Random(5);
+		Coordinates[] blockers = new Coordinates[blockerCount];
+		for (int i = 0; i < blockerCount; i++) {
+			Coordinates cell = free.get(random.nextInt(free.size()));
+			if (!grid.isWalkable(cell) || cell.equals(source) || cell.equals(target))
+				continue;
+			blockers[i] = cell;
+			grid.setNodeWalkable(cell, false);
+			dStarLite.onWalkableChanged(grid.getIndex(cell.getX(), cell.getY()));
+		}
+
+		long expandedAStar = 0;
+		long expandedDStarLite = 0;
+		int steps = 0;
+		int mismatches = 0;
+		while (!source.equals(target) && steps < 4 * n) {
+			for (int i = 0; i < blockerCount; i++) {
+				if (blockers[i] == null)
+					continue;
+				Coordinates next = new Coordinates(blockers[i].getX() + random.nextInt(3) - 1,
+						blockers[i].getY() + random.nextInt(3) - 1);
+				if (!grid.isInside(next.getX(), next.getY()) || !grid.isWalkable(next) || next.equals(source)
+						|| next.equals(target))
+					continue;
+				grid.setNodeWalkable(blockers[i], true);
+				dStarLite.onWalkableChanged(grid.getIndex(blockers[i].getX(), blockers[i].getY()));
+				grid.setNodeWalkable(next, false);
+				dStarLite.onWalkableChanged(grid.getIndex(next.getX(), next.getY()));
+				blockers[i] = next;
+			}
+
+			int costAStar = Maps.cost(source, pathfinding.FindPath(source, target, state));
+			expandedAStar += state.getExpandedCount();
+			Path path = dStarLite.FindPath(source, target);
+			expandedDStarLite += dStarLite.getExpandedCount();
+			steps++;
+			if (costAStar != Maps.cost(source, path))
+				mismatches++;
+			if (path == null)
+				break;
+			source = path.get(0);
+		}
+
+		System.out.printf("%dx%d, %3d blockers: %d steps, expanded per replan A* %.0f D* Lite %.0f | cost mismatches %d%n",
+				n, n, blockerCount, steps, (double) expandedAStar / steps, (double) expandedDStarLite / steps,
+				mismatches);
+	}
+
+	private static void hierarchical(String label, boolean[][] blocked, int count) {
+		Pathfinding pathfinding = Maps.pathfinding(blocked);
+		HierarchicalPathfinding hierarchical = new HierarchicalPathfinding(pathfinding);
+		Coordinates[][] queries = queries(blocked, count, 4);
+		// The clusters are built by the first search.
+		long start = System.nanoTime();
+		hierarchical.FindPath(queries[0][0], queries[0][1]);
+		double buildTime = (System.nanoTime() - start) / 1e6;
+
+		long costAStar = 0;
+		long costHierarchical = 0;
+		int misses = 0;
+		int found = 0;
+		for (Coordinates[] query : queries) {
+			int exact = Maps.cost(query[0], pathfinding.FindPath(query[0], query[1]));
+			int approximate = Maps.cost(query[0], hierarchical.FindPath(query[0], query[1]));
+			if (exact < 0)
+				continue;
+			found++;
+			if (approximate < 0) {
+				misses++;
+				continue;
+			}
+			costAStar += exact;
+			costHierarchical += approximate;
+		}
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			for (Coordinates[] query : queries) {
+				pathfinding.FindPath(query[0], query[1]);
+				hierarchical.FindPath(query[0], query[1]);
+			}
+		}
+		start = System.nanoTime();
+		for (Coordinates[] query : queries)
+			pathfinding.FindPath(query[0], query[1]);
+		double timeAStar = (System.nanoTime() - start) / 1e3 / count;
+		start = System.nanoTime();
+		for (Coordinates[] query : queries)
+			hierarchical.FindPath(query[0], query[1]);
+		double timeHierarchical = (System.nanoTime() - start) / 1e3 / count;
+
+		System.out.printf("%-20s first search %.1f ms | A* %8.1f us | HPA* %8.1f us, %.1f%% longer, missed %d/%d%n", label,
+				buildTime, timeAStar, timeHierarchical, 100.0 * (costHierarchical - costAStar) / costAStar, misses,
+				found);
+	}
+
+	/**
+	 * Toggles random cells of a field rooted in the middle of a map with 30%
+	 * of the cells blocked.
+	 */
+	private static void distanceField(int n, int toggles) {
+		boolean[][] blocked = Maps.random(n, 0.3, 1);
+		blocked[n / 2][n / 2] = false;
+		Grid grid = Maps.pathfinding(blocked).getGrid();
+		DistanceField field = new DistanceField(grid, grid.getIndex(n / 2, n / 2));
+		Random random = new Random(6);
+		int[] nodes = new int[toggles];
+		for (int i = 0; i < toggles; i++) {
+			do
+				nodes[i] = random.nextInt(grid.getMaxSize());
+			while (nodes[i] == field.getRoot());
+		}
+		for (int i = 0; i < WARMUP_ROUNDS; i++)
+			toggle(grid, field, nodes);
+		long start = System.nanoTime();
+		toggle(grid, field, nodes);
+		double repairTime = (System.nanoTime() - start) / 1e3 / toggles;
+		int recomputes = Math.max(10, toggles / n);
+		start = System.nanoTime();
+		for (int i = 0; i < recomputes; i++)
+			field.recompute();
+		double recomputeTime = (System.nanoTime() - start) / 1e3 / recomputes;
+		System.out.printf("%dx%d: repair %.1f us | recompute %.1f us%n", n, n, repairTime, recomputeTime);
+	}
+
+	private static void toggle(Grid grid, DistanceField field, int[] nodes) {
+		for (int node : nodes) {
+			grid.setNodeWalkable(new Coordinates(grid.getX(node), grid.getY(node)), !grid.isWalkable(node));
+			field.onWalkableChanged(node);
+		}
+	}
+
+	private static void nearest(int n, int count) {
+		boolean[][] blocked = Maps.random(n, 0.3, 1);
+		Pathfinding pathfinding = Maps.pathfinding(blocked);
+		List<Coordinates> free = Maps.free(blocked);
+		Random random = new Random(8);
+		Coordinates[] sources = new Coordinates[count];
+		Coordinates[][] goals = new Coordinates[count][20];
+		GoalTest[] tests = new GoalTest[count];
+		for (int i = 0; i < count; i++) {
+			sources[i] = free.get(random.nextInt(free.size()));
+			final boolean[][] isGoal = new boolean[n][n];
+			for (int j = 0; j < goals[i].length; j++) {
+				goals[i][j] = free.get(random.nextInt(free.size()));
+				isGoal[goals[i][j].getX()][goals[i][j].getY()] = true;
+			}
+			tests[i] = new GoalTest() {
+				@Override
+				public boolean isGoal(int x, int y) {
+					return isGoal[x][y];
+				}
+			};
+		}
+		for (int round = 0; round < WARMUP_ROUNDS; round++) {
+			for (int i = 0; i < count; i++) {
+				pathfinding.FindNearest(sources[i], tests[i]);
+				for (Coordinates goal : goals[i])
+					pathfinding.FindPath(sources[i], goal);
+			}
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < count; i++)
+			pathfinding.FindNearest(sources[i], tests[i]);
+		double timeNearest = (System.nanoTime() - start) / 1e3 / count;
+		start = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			for (Coordinates goal : goals[i])
+				pathfinding.FindPath(sources[i], goal);
+		}
+		double timeAStar = (System.nanoTime() - start) / 1e3 / count;
+		System.out.printf("%dx%d: nearest %.1f us | A* to every goal %.1f us%n", n, n, timeNearest, timeAStar);
+	}
+
+	/**
+	 * Two agents start at both ends of a 21 cells corridor and swap ends.
+	 * Without cooperation each agent plans A* around the node the other is
+	 * on. With it they plan WHCA* moves in a shared reservation table, with
+	 * a distance field to their target as heuristic. Agents leave once
+	 * arrived.
+	 */
+	private static void corridor(boolean cooperative) {
+		int length = 21;
+		boolean[][] blocked = new boolean[length][5];
+		for (int x = 0; x < length; x++) {
+			for (int y = 0; y < 5; y++)
+				blocked[x][y] = y != 2 && !(x == length / 2 && y == 3);
+		}
+		Pathfinding pathfinding = Maps.pathfinding(blocked);
+		Grid grid = pathfinding.getGrid();
+		OccupancyLayer occupancy = new OccupancyLayer(length, 5);
+		ReservationTable table = new ReservationTable();
+		Coordinates[] positions = { new Coordinates(0, 2), new Coordinates(length - 1, 2) };
+		Coordinates[] targets = { positions[1], positions[0] };
+		CooperativePathfinding[] planners = new CooperativePathfinding[2];
+		DistanceField[] fields = new DistanceField[2];
+		for (int i = 0; i < 2; i++) {
+			planners[i] = new CooperativePathfinding(grid, table, Integer.valueOf(i));
+			fields[i] = new DistanceField(grid, grid.getIndex(targets[i].getX(), targets[i].getY()));
+		}
+
+		int lostTicks = 0;
+		int collisions = 0;
+		int arrived = 0;
+		long tick = 1;
+		for (; tick <= 200 && arrived < 2; tick++) {
+			Coordinates[] previous = positions.clone();
+			for (int i = 0; i < 2; i++) {
+				if (positions[i] == null)
+					continue;
+				Coordinates next = null;
+				if (cooperative) {
+					int[] plan = planners[i].FindPath(positions[i],
+							grid.getIndex(targets[i].getX(), targets[i].getY()), fields[i], tick);
+					if (plan != null) {
+						table.reserve(Integer.valueOf(i), plan, tick - 1);
+						next = new Coordinates(grid.getX(plan[1 % plan.length]), grid.getY(plan[1 % plan.length]));
+					}
+				} else {
+					Coordinates other = positions[1 - i];
+					long[] occupied = occupancy.createBitSet();
+					if (other != null)
+						OccupancyLayer.set(occupied, grid.getIndex(other.getX(), other.getY()));
+					grid.setOccupied(occupied, -1);
+					Path path = pathfinding.FindPath(positions[i], targets[i]);
+					grid.setOccupied(null, -1);
+					if (path != null && !path.isEmpty())
+						next = path.get(0);
+				}
+				if (next == null || next.equals(positions[i]) || next.equals(positions[1 - i])) {
+					lostTicks++;
+					continue;
+				}
+				positions[i] = next;
+			}
+			if (positions[0] != null && positions[0].equals(positions[1])
+					|| positions[0] != null && positions[1] != null && positions[0].equals(previous[1])
+							&& positions[1].equals(previous[0]))
+				collisions++;
+			for (int i = 0; i < 2; i++) {
+				if (positions[i] != null && positions[i].equals(targets[i])) {
+					positions[i] = null;
+					table.release(Integer.valueOf(i));
+					arrived++;
+				}
+			}
+		}
+		System.out.printf("%-30s arrived %d/2 after %d ticks, %d ticks lost, %d collisions or swaps%n",
+				cooperative ? "WHCA*" : "A* around the other agent", arrived, tick - 1, lostTicks, collisions);
+	}
+
+	/**
+	 * Searches corner to corner on a random map where the target is walled
+	 * in, so the whole map is expanded.
+	 */
+	private static void budgeted(int n, int budget) {
+		boolean[][] blocked = Maps.random(n, 0.2, 1);
+		blocked[0][0] = false;
+		blocked[n - 1][n - 1] = false;
+		blocked[n - 2][n - 1] = true;
+		blocked[n - 1][n - 2] = true;
+		blocked[n - 2][n - 2] = true;
+		Pathfinding pathfinding = Maps.pathfinding(blocked);
+		Coordinates source = new Coordinates(0, 0);
+		Coordinates target = new Coordinates(n - 1, n - 1);
+		for (int i = 0; i < WARMUP_ROUNDS; i++)
+			pathfinding.FindPath(source, target);
+		long start = System.nanoTime();
+		pathfinding.FindPath(source, target);
+		double searchTime = (System.nanoTime() - start) / 1e6;
+
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			PathSearch search = pathfinding.StartSearch(source, target);
+			while (!search.resume(budget))
+				;
+			search.release();
+		}
+		PathSearch search = pathfinding.StartSearch(source, target);
+		List<Long> tickTimes = new ArrayList<Long>();
+		boolean finished = false;
+		while (!finished) {
+			start = System.nanoTime();
+			finished = search.resume(budget);
+			tickTimes.add(System.nanoTime() - start);
+		}
+		search.release();
+		Collections.sort(tickTimes);
+		System.out.printf("%dx%d: one search %.1f ms | %d ticks, median %.3f ms, slowest %.3f ms per tick%n", n, n,
+				searchTime, tickTimes.size(), tickTimes.get(tickTimes.size() / 2) / 1e6,
+				tickTimes.get(tickTimes.size() - 1) / 1e6);
+	}
+
+	/**
+	 * @return pairs of free source and target cells picked with a fixed seed.
+	 */
+	static Coordinates[][] queries(boolean[][] blocked, int count, long seed) {
+		List<Coordinates> free = Maps.free(blocked);
+		Random random = new Random(seed);
+		Coordinates[][] queries = new Coordinates[count][];
+		for (int i = 0; i < count; i++)
+			queries[i] = new Coordinates[] { free.get(random.nextInt(free.size())), free.get(random.nextInt(free.size())) };
+		return queries;
+	}
+}
@@ -0,0 +1,73 @@
+package bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import repast.simphony.space.grid.Grid;
+import utils.Coordinates;
+import utils.ObstacleMap;
+import utils.raytrace.RayHit;
+import utils.raytrace.RayTracing;
+
+/**
+ * Bytes allocated and time per ray of RayTracing's TracedPath trace and of
+ * the trace that writes into a RayHit. Allocation is read from the thread's
+ * allocated bytes counter of the HotSpot JVM, so it needs one.
+ * Arguments: side of the map (60).
+ */
+public class RayAllocationBenchmark {
+
+	private static final int RAYS = 1000;
+	private static final int REPEATS = 20;
+	private static final int ROUNDS = 10;
+	private static final int WARMUP_ROUNDS = 7;
+
+	// Keeps the traces from being optimized away.
+	static volatile long sink;
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+
+		Grid<Object> grid = Maps.world(Maps.random(n, 0.14, 3));
+		ObstacleMap obstacles = ObstacleMap.forGrid(grid);
+		Random random = new Random(3);
+		Coordinates[] origins = new Coordinates[RAYS];
+		Coordinates[] targets = new Coordinates[RAYS];
+		for (int i = 0; i < RAYS; i++) {
+			origins[i] = new Coordinates(random.nextInt(n), random.nextInt(n));
+			targets[i] = new Coordinates(random.nextInt(n), random.nextInt(n));
+		}
+		RayHit hit = new RayHit();
+		int rays = RAYS * REPEATS;
+
+		for (int round = 0; round < ROUNDS; round++) {
+			long traced = 0;
+			long bytes0 = threads.getThreadAllocatedBytes(thread);
+			long time0 = System.nanoTime();
+			for (int k = 0; k < REPEATS; k++) {
+				for (int i = 0; i < RAYS; i++)
+					traced += RayTracing.trace(grid, origins[i], targets[i], true).getTraveled().size();
+			}
+			long bytes1 = threads.getThreadAllocatedBytes(thread);
+			long time1 = System.nanoTime();
+			for (int k = 0; k < REPEATS; k++) {
+				for (int i = 0; i < RAYS; i++) {
+					if (RayTracing.trace(grid, obstacles, origins[i].getX(), origins[i].getY(), targets[i].getX(),
+							targets[i].getY(), true, null, hit))
+						traced += hit.getX();
+				}
+			}
+			long bytes2 = threads.getThreadAllocatedBytes(thread);
+			long time2 = System.nanoTime();
+			sink += traced;
+
+			if (round >= WARMUP_ROUNDS)
+				System.out.printf("TracedPath %.0f B/ray %.0f ns/ray | RayHit %.1f B/ray %.0f ns/ray%n",
+						(bytes1 - bytes0) / (double) rays, (time1 - time0) / (double) rays,
+						(bytes2 - bytes1) / (double) rays, (time2 - time1) / (double) rays);
+		}
+	}
+}
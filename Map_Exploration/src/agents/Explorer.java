@@ -3,9 +3,9 @@ package agents;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
+import algorithms.astar.PlannerSettings;
 import behaviours.Exploration;
 import behaviours.SendingMessages;
 import communication.GroupMessage;
@@ -28,6 +28,7 @@ import sajas.domain.DFService;
 import states.IAgentState;
 import utils.Coordinates;
 import utils.Matrix;
+import utils.ObstacleMap;
 import utils.Utils.AgentType;
 
 public class Explorer extends Agent {
@@ -44,6 +45,9 @@ public class Explorer extends Agent {
 
 	private Exploration exploration;
 	private SendingMessages sendingMessages;
+	private Coordinates pendingVision;	// Where the agent moved to, until VisionStage updates its matrix.
+	private ObstacleMap obstacleMap;	// Looked up once, see getObstacleMap().
+	private PlannerSettings plannerSettings = new PlannerSettings();
 	
 	private List<AID> superAgentsAID;
 
@@ -97,6 +101,7 @@ public class Explorer extends Agent {
 			space.moveTo(dc, dc.getCoordinates().getX(), dc.getCoordinates().getY());
 			grid.moveTo(dc, dc.getCoordinates().getX(), dc.getCoordinates().getY());
 			context.remove(obj);
+			getObstacleMap().update(grid, dc.getCoordinates().getX(), dc.getCoordinates().getY());
 		}
 	}
 
@@ -163,13 +168,39 @@ public class Explorer extends Agent {
 		if (canMove(targetCoordinates)) {
 			if (space.moveTo(this, targetCoordinates.getX(), targetCoordinates.getY())) {
 				grid.moveTo(this, targetCoordinates.getX(), targetCoordinates.getY());
-				getMatrix().updateMatrix(exploration, getGrid(), targetCoordinates, getRadious());
+				// What was seen on a previous move of the same tick isn't lost.
+				if (pendingVision != null) {
+					computeVision();
+					applyVision();
+				}
+				pendingVision = targetCoordinates;
 				return true;
 			}
 		}
 		return false;
 	}
 
+	public boolean hasPendingVision() {
+		return pendingVision != null;
+	}
+
+	/**
+	 * Computes what the agent sees from where it moved to. Only reads the
+	 * obstacles, so it can run for several agents at the same time.
+	 */
+	public void computeVision() {
+		getMatrix().computeVisibleCells(getObstacleMap(), pendingVision, radious);
+	}
+
+	/**
+	 * Updates the matrix with what computeVision() found. Discovers cells on
+	 * the grid, so it runs for one agent at a time.
+	 */
+	public void applyVision() {
+		getMatrix().applyVisibleCells(exploration, grid, true);
+		pendingVision = null;
+	}
+
 	/**
 	 * If the target coordinates has an obstacle, it returns false. Otherwise,
 	 * it returns true;
@@ -178,13 +209,7 @@ public class Explorer extends Agent {
 	 * @return Returns if the agent can move to the specified coordinates.
 	 */
 	public boolean canMove(Coordinates targetCoordinates) {
-		Iterator<Object> it = grid.getObjectsAt(targetCoordinates.getX(), targetCoordinates.getY()).iterator();
-		while (it.hasNext()) {
-			Object obj = it.next();
-			if (obj instanceof Obstacle)// || obj instanceof Explorer)
-				return false;
-		}
-		return true;
+		return !getObstacleMap().isBlocked(targetCoordinates.getX(), targetCoordinates.getY());
 	}
 
 	public void discoverCell(UndiscoveredCell cell) {
@@ -196,6 +221,7 @@ public class Explorer extends Agent {
 	}
 
 	public void exitFromSimulation() {
+		pendingVision = null;
 		removeBehaviour(exploration);
 		removeBehaviour(sendingMessages);
 		takeDown();
@@ -241,6 +267,16 @@ public class Explorer extends Agent {
 		return grid;
 	}
 
+	/**
+	 * Returns the obstacles of the agent's world. The map is shared by the
+	 * world and never replaced, so it's only looked up the first time.
+	 */
+	public ObstacleMap getObstacleMap() {
+		if (obstacleMap == null)
+			obstacleMap = ObstacleMap.forGrid(grid);
+		return obstacleMap;
+	}
+
 	public int getRadious() {
 		return radious;
 	}
@@ -271,8 +307,22 @@ public class Explorer extends Agent {
 
 	public Exploration getExploration() { return exploration; }
 
+	public PlannerSettings getPlannerSettings() {
+		return plannerSettings;
+	}
+
+	/**
+	 * Sets the planners of the agent's AStar. Must be called before the
+	 * agent starts.
+	 * 
+	 * @param plannerSettings
+	 */
+	public void setPlannerSettings(PlannerSettings plannerSettings) {
+		this.plannerSettings = plannerSettings;
+	}
+
 	public IAgentState getState() {
-		return exploration.getState();
+		return exploration != null ? exploration.getState() : null;
 	}
 	
 	public List<AID> getSuperAgentsAID() {
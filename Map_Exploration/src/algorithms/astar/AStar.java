@@ -1,29 +1,352 @@
 package algorithms.astar;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.Future;
 
 import agents.Explorer;
+import repast.simphony.engine.environment.RunEnvironment;
 import repast.simphony.space.grid.GridPoint;
 import utils.Coordinates;
 import utils.Utils;
 
 public class AStar {
 
+	/**
+	 * Search algorithm used by computePath. A* and Jump Point Search return
+	 * shortest paths, Jump Point Search expands far fewer nodes on open maps.
+	 * The hierarchical planner returns near shortest paths and scales to
+	 * large maps.
+	 */
+	public enum Planner {
+		ASTAR,
+		JUMP_POINT_SEARCH,
+		HIERARCHICAL
+	}
+
+	/**
+	 * How getNextStepToExit finds the way. The distance field is shared by
+	 * every agent and only looks at the agent's neighbours. Incremental
+	 * keeps the agent's own D* Lite search tree to the exit and repairs it
+	 * when obstacles or other agents move. Cooperative plans the next moves
+	 * with the other cooperative agents (see setCooperative), using the
+	 * distance field as heuristic; it's the most expensive one.
+	 */
+	public enum ExitPlanner {
+		DISTANCE_FIELD,
+		INCREMENTAL,
+		COOPERATIVE
+	}
+
+	private static final String[] COMPUTE_PATH_KINDS = new String[Planner.values().length];	// Metrics kind per planner.
+
+	static {
+		for (Planner planner : Planner.values())
+			COMPUTE_PATH_KINDS[planner.ordinal()] = "computePath/" + planner;
+	}
+
 	private Explorer agent;
 	private Pathfinding pathfinding;
-	private List<Coordinates> dynamicNotWalkable;
+	private JumpPointSearch jumpPointSearch;
+	private DStarLite dStarLite;	// Only built once used.
+	private HierarchicalPathfinding hierarchicalPathfinding;	// Only built once selected.
+	private Planner planner;
+	private ExitPlanner exitPlanner;
+	private PathCache pathCache;
+	private int walkabilityVersion;	// Bumped whenever a static node's walkability changes.
+	private int[] occupancyChanges = new int[16];	// Scratch of setOccupied, nodes that may have changed.
+	private boolean[] occupancyWalkable = new boolean[16];	// Scratch of setOccupied, walkability before.
+	private CooperativePathfinding cooperativePathfinding;	// Only built once cooperative.
+	private LandmarkHeuristic landmarkHeuristic;	// Only set once turned on.
+	private FirstMoveTable firstMoveTable;	// Only set once turned on.
 
 	public AStar(Explorer agent) {
 		this.agent = agent;
-		pathfinding = new Pathfinding(agent.getGrid().getDimensions().getWidth(),
-				agent.getGrid().getDimensions().getHeight());
-		dynamicNotWalkable = new ArrayList<>();
+		// The agent only plans with what it learned, the layer is the team's view.
+		pathfinding = new Pathfinding(new Grid(StaticLayer.forWorld(agent.getGrid(),
+				agent.getGrid().getDimensions().getWidth(), agent.getGrid().getDimensions().getHeight()), true));
+		jumpPointSearch = new JumpPointSearch(pathfinding.getGrid());
+		planner = Planner.ASTAR;
+		exitPlanner = ExitPlanner.DISTANCE_FIELD;
+		pathCache = new PathCache(pathfinding.getGrid());
+		applySettings(agent.getPlannerSettings());
+	}
+
+	/**
+	 * Returns the path between 2 world positions. Paths are cached until the
+	 * walkability of any static node changes, so repeating a query, or asking
+	 * again from the next node of the path, doesn't search the grid. A cached
+	 * path is only returned if its first step isn't occupied. With a valid
+	 * first move table the path is read from the table instead, under the
+	 * same condition.
+	 * 
+	 * @param sourceWorldPosition
+	 * @param targetWorldPosition
+	 * @return Path without the source node or null if there is none.
+	 */
+	public Path computePath(Coordinates sourceWorldPosition, Coordinates targetWorldPosition) {
+		return findPath(sourceWorldPosition, targetWorldPosition, false);
+	}
+
+	/**
+	 * Same as computePath, but the search tree is kept between calls with
+	 * the same target and only repaired where walkability changed (D* Lite).
+	 * Meant for long routes to a fixed target that are replanned every tick.
+	 * 
+	 * @param sourceWorldPosition
+	 * @param targetWorldPosition
+	 * @return Path without the source node or null if there is none.
+	 */
+	public Path computeIncrementalPath(Coordinates sourceWorldPosition, Coordinates targetWorldPosition) {
+		return findPath(sourceWorldPosition, targetWorldPosition, true);
+	}
+
+	private Path findPath(Coordinates sourceWorldPosition, Coordinates targetWorldPosition,
+			boolean incremental) {
+		PathfindingMetrics.Query query = beginQuery(incremental ? "computeIncrementalPath" : COMPUTE_PATH_KINDS[planner.ordinal()]);
+		Grid grid = pathfinding.getGrid();
+		int sourceNode = grid.getIndex(sourceWorldPosition.getX(), sourceWorldPosition.getY());
+		int targetNode = grid.getIndex(targetWorldPosition.getX(), targetWorldPosition.getY());
+		Path path = pathCache.get(sourceNode, targetNode, walkabilityVersion);
+		if (path != null)
+			return query.end(path);
+
+		if (!incremental && hasFirstMoveTable()) {
+			path = firstMoveTable.getPath(sourceNode, targetNode);
+			if (path == null || path.isEmpty() || grid.isWalkable(grid.getIndex(path.getX(0), path.getY(0))))
+				return query.end(path);
+		}
+
+		if (incremental) {
+			if (dStarLite == null)
+				dStarLite = new DStarLite(pathfinding.getGrid());
+			path = dStarLite.FindPath(sourceWorldPosition, targetWorldPosition);
+			query.addCounts(dStarLite.getExpandedCount(), dStarLite.getHeapOperationCount());
+		} else if (planner == Planner.JUMP_POINT_SEARCH)
+			path = jumpPointSearch.FindPath(sourceWorldPosition, targetWorldPosition);
+		else if (planner == Planner.HIERARCHICAL)
+			path = hierarchicalPathfinding.FindPath(sourceWorldPosition, targetWorldPosition);
+		else
+			path = pathfinding.FindPath(sourceWorldPosition, targetWorldPosition);
+		pathCache.put(sourceNode, targetNode, walkabilityVersion, path);
+		return query.end(path);
+	}
+
+	/**
+	 * Submits the search of the path between 2 world positions to the
+	 * worker threads of the PathService, on a copy of the agent's grid. Meant
+	 * to be submitted a tick ahead and collected before acting. The planner
+	 * is A*, or Jump Point Search if selected.
+	 * 
+	 * @param sourceWorldPosition
+	 * @param targetWorldPosition
+	 * @return Path without the source node, or null if there is none, once
+	 *         done.
+	 */
+	public Future<Path> computePathAsync(Coordinates sourceWorldPosition, Coordinates targetWorldPosition) {
+		return PathService.submit(pathfinding.getGrid().copy(), sourceWorldPosition, targetWorldPosition,
+				planner == Planner.JUMP_POINT_SEARCH);
 	}
 
-	public List<Node> computePath(Coordinates sourceWorldPosition, Coordinates targetWorldPosition) {
-		return pathfinding.FindPath(sourceWorldPosition, targetWorldPosition);
+	/**
+	 * Starts a search between 2 world positions that is run a limited number
+	 * of expansions at a time, so it can be spread over several ticks.
+	 * 
+	 * @param sourceWorldPosition
+	 * @param targetWorldPosition
+	 * @return Search to resume every tick until it's finished, then release.
+	 */
+	public PathSearch startPathSearch(Coordinates sourceWorldPosition, Coordinates targetWorldPosition) {
+		PathSearch search = pathfinding.StartSearch(sourceWorldPosition, targetWorldPosition);
+		search.setMetricsKey(PathfindingMetrics.getKey(getStateClass(), "resumePathSearch"));
+		return search;
+	}
+
+	/**
+	 * Returns the shortest path between 2 world positions that stays inside
+	 * the rectangle around both of them, grown by a margin. Meant for short
+	 * detours, it's never cached.
+	 * 
+	 * @param sourceWorldPosition
+	 * @param targetWorldPosition
+	 * @param margin
+	 * @return Path without the source node or null if there is none.
+	 */
+	public Path computeLocalPath(Coordinates sourceWorldPosition, Coordinates targetWorldPosition, int margin) {
+		PathfindingMetrics.Query query = beginQuery("computeLocalPath");
+		Grid grid = pathfinding.getGrid();
+		return query.end(pathfinding.FindPath(sourceWorldPosition, targetWorldPosition,
+				SearchState.forCurrentThread(grid.getMaxSize()),
+				Math.max(0, Math.min(sourceWorldPosition.getX(), targetWorldPosition.getX()) - margin),
+				Math.max(0, Math.min(sourceWorldPosition.getY(), targetWorldPosition.getY()) - margin),
+				Math.min(grid.getGridSizeX() - 1, Math.max(sourceWorldPosition.getX(), targetWorldPosition.getX()) + margin),
+				Math.min(grid.getGridSizeY() - 1, Math.max(sourceWorldPosition.getY(), targetWorldPosition.getY()) + margin)));
+	}
+
+	public boolean isWalkable(Coordinates worldPosition) {
+		return isWalkable(worldPosition.getX(), worldPosition.getY());
+	}
+
+	public boolean isWalkable(int x, int y) {
+		Grid grid = pathfinding.getGrid();
+		return grid.isWalkable(grid.getIndex(x, y));
+	}
+
+	/**
+	 * Selects the planners given by the settings.
+	 * 
+	 * @param settings
+	 */
+	public void applySettings(PlannerSettings settings) {
+		setPlanner(settings.getPlanner());
+		setExitPlanner(settings.getExitPlanner());
+		setLandmarkHeuristic(settings.isLandmarkHeuristic());
+		setFirstMoveTable(settings.isFirstMoveTable());
+	}
+
+	public Planner getPlanner() {
+		return planner;
+	}
+
+	public void setPlanner(Planner planner) {
+		this.planner = planner;
+		if (planner == Planner.HIERARCHICAL && hierarchicalPathfinding == null)
+			hierarchicalPathfinding = new HierarchicalPathfinding(pathfinding);
+		pathCache.clear();
+	}
+
+	public ExitPlanner getExitPlanner() {
+		return exitPlanner;
+	}
+
+	public void setExitPlanner(ExitPlanner exitPlanner) {
+		this.exitPlanner = exitPlanner;
+	}
+
+	public boolean isLandmarkHeuristic() {
+		return landmarkHeuristic != null;
+	}
+
+	/**
+	 * Turns the landmark heuristic (ALT) of A* on or off. The landmarks are
+	 * the agent's own, over the obstacles it knows, and are repaired with
+	 * them, so paths stay the shortest. Far fewer nodes are expanded on
+	 * maze-like maps, at the cost of 3 ints per node for each landmark.
+	 * 
+	 * @param enabled
+	 */
+	public void setLandmarkHeuristic(boolean enabled) {
+		if (enabled && landmarkHeuristic == null)
+			landmarkHeuristic = new LandmarkHeuristic(pathfinding.getGrid(), LandmarkHeuristic.DEFAULT_LANDMARK_COUNT);
+		else if (!enabled)
+			landmarkHeuristic = null;
+		pathfinding.setHeuristic(landmarkHeuristic);
+	}
+
+	/**
+	 * Returns true if a first move table was turned on, is built and is
+	 * still valid for the obstacles known by the team. A table that isn't
+	 * is swapped for the world's latest one, which is rebuilt once the
+	 * obstacles settle.
+	 */
+	public boolean hasFirstMoveTable() {
+		if (firstMoveTable == null)
+			return false;
+		int layerVersion = pathfinding.getGrid().getLayer().getSnapshot().getVersion();
+		if (!firstMoveTable.isValid(layerVersion)) {
+			Grid grid = pathfinding.getGrid();
+			firstMoveTable = FirstMoveTable.forWorld(agent.getGrid(), grid.getGridSizeX(), grid.getGridSizeY());
+		}
+		return firstMoveTable.isValid(layerVersion);
+	}
+
+	/**
+	 * Turns the first move table on or off. The table is shared by the
+	 * agents of the world and is built in the background, with one search per
+	 * node. Until it's built the selected planner is used. When an obstacle
+	 * changes the table is dropped, and built again once no obstacle changed
+	 * for FirstMoveTable.SETTLE_TIME_MS, so it's meant for maps that are
+	 * fully known or change rarely.
+	 * 
+	 * @param enabled
+	 */
+	public void setFirstMoveTable(boolean enabled) {
+		Grid grid = pathfinding.getGrid();
+		if (enabled)
+			firstMoveTable = FirstMoveTable.forWorld(agent.getGrid(), grid.getGridSizeX(), grid.getGridSizeY());
+		else
+			firstMoveTable = null;
+	}
+
+	public boolean isCooperative() {
+		return cooperativePathfinding != null;
+	}
+
+	/**
+	 * Turns windowed cooperative planning (WHCA*) on or off. Cooperative
+	 * agents reserve their next moves in a table shared by the world, so
+	 * they don't block each other nor try to swap places.
+	 * 
+	 * @param cooperative
+	 */
+	public void setCooperative(boolean cooperative) {
+		if (cooperative && cooperativePathfinding == null)
+			cooperativePathfinding = new CooperativePathfinding(pathfinding.getGrid(),
+					ReservationTable.forWorld(agent.getGrid()), agent);
+		else if (!cooperative) {
+			releaseReservations();
+			cooperativePathfinding = null;
+		}
+	}
+
+	/**
+	 * Plans the agent's next moves together with the other cooperative
+	 * agents and reserves them.
+	 * 
+	 * @param targetWorldPosition
+	 * @param heuristic estimate of the cost to the target, a DistanceField
+	 *            rooted at the target works best.
+	 * @return Next position, the current one if the agent should wait, or
+	 *         null if there is no way to the target.
+	 */
+	public Coordinates getNextCooperativeStep(Coordinates targetWorldPosition, Heuristic heuristic) {
+		PathfindingMetrics.Query query = beginQuery("getNextCooperativeStep");
+		Coordinates nextStep = nextCooperativeStep(targetWorldPosition, heuristic);
+		query.end(nextStep != null ? 1 : 0, nextStep != null);
+		return nextStep;
+	}
+
+	private Coordinates nextCooperativeStep(Coordinates targetWorldPosition, Heuristic heuristic) {
+		Grid grid = pathfinding.getGrid();
+		Coordinates source = Coordinates.FromGridPoint(agent.getGrid().getLocation(agent));
+		long tick = (long) RunEnvironment.getInstance().getCurrentSchedule().getTickCount();
+		int[] plan = cooperativePathfinding.FindPath(source,
+				grid.getIndex(targetWorldPosition.getX(), targetWorldPosition.getY()), heuristic, tick);
+		if (plan == null) {
+			// Stay, so the others don't plan through the agent.
+			plan = new int[cooperativePathfinding.getWindow() + 1];
+			Arrays.fill(plan, grid.getIndex(source.getX(), source.getY()));
+			ReservationTable.forWorld(agent.getGrid()).reserve(agent, plan, tick - 1);
+			return null;
+		}
+		ReservationTable.forWorld(agent.getGrid()).reserve(agent, plan, tick - 1);
+		int nextNode = plan.length > 1 ? plan[1] : plan[0];
+		return new Coordinates(grid.getX(nextNode), grid.getY(nextNode));
+	}
+
+	/**
+	 * Removes the agent's moves from the reservation table, for when it
+	 * stops moving cooperatively.
+	 */
+	public void releaseReservations() {
+		ReservationTable.forWorld(agent.getGrid()).release(agent);
+	}
+
+	public int getPathCacheHits() {
+		return pathCache.getHits();
+	}
+
+	public int getPathCacheMisses() {
+		return pathCache.getMisses();
 	}
 
 	/**
@@ -31,186 +354,230 @@ public class AStar {
 	 * 
 	 * @return Path to exit or null if there is none.
 	 */
-	public List<Node> getPathToExit() {
+	public Path getPathToExit() {
 		Coordinates exit = agent.getMatrix().getExit();
 		if (exit != null) {
 			GridPoint pt = agent.getGrid().getLocation(agent);
-			return computePath(new Coordinates(pt.getX(), pt.getY()), exit);
+			return computeIncrementalPath(new Coordinates(pt.getX(), pt.getY()), exit);
 		}
 		return null;
 	}
 
-	public void addDynamicNotWalkable(Coordinates coordinates) {
-		dynamicNotWalkable.add(coordinates);
-		setNodeWalkable(coordinates, false);
+	/**
+	 * Returns the next position to move to in order to reach the exit. The
+	 * way is read from the distance field shared by all the agents, so only
+	 * the nodes around the agent are looked at. Nodes occupied by other
+	 * agents are avoided. Cooperative agents use the field as heuristic of
+	 * getNextCooperativeStep. With the incremental exit planner it's the
+	 * first node of getPathToExit instead.
+	 * 
+	 * @return Next position, the current one if a cooperative agent should
+	 *         wait, or null if the exit is unknown, reached or can't be
+	 *         reached.
+	 */
+	public Coordinates getNextStepToExit() {
+		PathfindingMetrics.Query query = beginQuery("getNextStepToExit");
+		Coordinates nextStep = nextStepToExit();
+		query.end(nextStep != null ? 1 : 0, nextStep != null);
+		return nextStep;
 	}
 
-	public void resetDynamicNotWalkable() {
-		for (Iterator<Coordinates> it = dynamicNotWalkable.iterator(); it.hasNext();) {
-			Coordinates coordinates = it.next();
-			setNodeWalkable(coordinates, true);
-			it.remove();
+	private Coordinates nextStepToExit() {
+		if (exitPlanner == ExitPlanner.INCREMENTAL) {
+			Path path = getPathToExit();
+			return path != null && !path.isEmpty() ? path.get(0) : null;
+		}
+		Coordinates exit = agent.getMatrix().getExit();
+		if (exit == null)
+			return null;
+		Grid grid = pathfinding.getGrid();
+		SharedExitField field = SharedExitField.forWorld(agent.getGrid(), grid.getGridSizeX(),
+				grid.getGridSizeY(), exit);
+		if (isCooperative())
+			return nextCooperativeStep(exit, field.getDistanceField());
+		GridPoint pt = agent.getGrid().getLocation(agent);
+		if (field.getDistance(pt.getX(), pt.getY()) == 0)
+			return null;
+
+		int source = grid.getIndex(pt.getX(), pt.getY());
+		int bestCost = DistanceField.INFINITY;
+		Coordinates nextStep = null;
+		for (int x = pt.getX() - 1; x <= pt.getX() + 1; x++) {
+			for (int y = pt.getY() - 1; y <= pt.getY() + 1; y++) {
+				if (!grid.isInside(x, y))
+					continue;
+				int neighbour = grid.getIndex(x, y);
+				if (neighbour == source || !grid.isWalkable(neighbour))
+					continue;
+				int distance = field.getDistance(x, y);
+				if (distance >= DistanceField.INFINITY)
+					continue;
+				int cost = grid.getDistance(source, neighbour) + distance;
+				if (cost < bestCost) {
+					bestCost = cost;
+					nextStep = new Coordinates(x, y);
+				}
+			}
 		}
+		return nextStep;
 	}
 
 	/**
-	 * Returns the nearest coordinate that has not yet been discovered based on
-	 * the agent's position.
+	 * Makes the nodes occupied by agents not walkable for the next searches,
+	 * except the one the agent stands on. The bit set is shared, not copied,
+	 * and the grid itself is never changed. Only D* Lite, the planner that
+	 * keeps a search tree between searches, is told about the nodes that
+	 * changed since the last call. HPA* keeps occupancy out of its abstract
+	 * graph and cached paths are kept.
 	 * 
-	 * @param currentPosition
-	 * @return
-	 */
-	public List<Node> getNearestObstacle(GridPoint currentPosition) {
-		Coordinates currCoordinates = utils.Utils.matrixFromWorldPoint(currentPosition,
-				agent.getGrid().getDimensions().getHeight());
-		Coordinates nearestUndiscovered = null;
-
-		int matrixMaxIndexX = agent.getGrid().getDimensions().getWidth() - 1;
-		int leftCellsAmount = matrixMaxIndexX - currCoordinates.getX();
-		int rightCellsAmount = matrixMaxIndexX - (matrixMaxIndexX - currCoordinates.getX());
-		int matrixMaxIndexY = agent.getGrid().getDimensions().getHeight() - 1;
-		int upperCellsAmount = matrixMaxIndexY - currCoordinates.getY();
-		int bottomCellsAmount = matrixMaxIndexY - (matrixMaxIndexY - currCoordinates.getY());
-
-		int[] values = { leftCellsAmount, rightCellsAmount, upperCellsAmount, bottomCellsAmount };
-		int maxDistance = utils.Utils.findMax(values); // Distance from the
-														// current position to
-														// the furthest edge of
-														// the matrix.
-
-		for (int radious = 2; radious <= maxDistance; radious++) {
-			nearestUndiscovered = getObstacleInRadius(currCoordinates, radious);
-			if (nearestUndiscovered != null) {
-				List<Node> path = computePath(Coordinates.FromGridPoint(currentPosition), utils.Utils
-						.worldPointFromMatrix(nearestUndiscovered, agent.getGrid().getDimensions().getHeight()));
-				if (path != null)
-					return path;
+	 * @param occupied bit set of the occupied nodes (see OccupancyLayer), or
+	 *            null for none.
+	 */
+	public void setOccupied(long[] occupied) {
+		Grid grid = pathfinding.getGrid();
+		GridPoint pt = agent.getGrid().getLocation(agent);
+		int ownNode = grid.getIndex(pt.getX(), pt.getY());
+		long[] previous = grid.getOccupied();
+		int previousOwnNode = grid.getIgnoredNode();
+		if (occupied == previous && ownNode == previousOwnNode)
+			return;
+		if (dStarLite == null) {
+			grid.setOccupied(occupied, ownNode);
+			return;
+		}
+
+		// Nodes whose occupancy may have changed, and whether they were walkable.
+		int[] changed = occupancyChanges;
+		int changedCount = 0;
+		int wordCount = previous != null ? previous.length : occupied != null ? occupied.length : 0;
+		for (int word = 0; word < wordCount; word++) {
+			long diff = (previous != null ? previous[word] : 0) ^ (occupied != null ? occupied[word] : 0);
+			for (; diff != 0; diff &= diff - 1) {
+				if (changedCount == changed.length)
+					changed = Arrays.copyOf(changed, changedCount * 2);
+				changed[changedCount++] = (word << 6) + Long.numberOfTrailingZeros(diff);
 			}
 		}
-		return null;
+		if (changedCount + 2 > changed.length)
+			changed = Arrays.copyOf(changed, changedCount + 2);
+		if (previousOwnNode >= 0)
+			changed[changedCount++] = previousOwnNode;
+		changed[changedCount++] = ownNode;
+		occupancyChanges = changed;
+
+		if (occupancyWalkable.length < changed.length)
+			occupancyWalkable = new boolean[changed.length];
+		boolean[] wasWalkable = occupancyWalkable;
+		for (int i = 0; i < changedCount; i++)
+			wasWalkable[i] = grid.isWalkable(changed[i]);
+		grid.setOccupied(occupied, ownNode);
+		for (int i = 0; i < changedCount; i++) {
+			if (grid.isWalkable(changed[i]) != wasWalkable[i])
+				dStarLite.onWalkableChanged(changed[i]);
+		}
 	}
 
 	/**
-	 * Returns the first coordinate that has a zero on the matrix (is
-	 * undiscovered) distancing 'radious' from the agent.
-	 * 
-	 * @param currCoordinates
-	 * @param radious
-	 * @return
-	 */
-	private Coordinates getObstacleInRadius(Coordinates currCoordinates, int radious) {
-		Coordinates nearestCoordinate = null;
-		float nearestDistance = Float.MAX_VALUE;
-
-		for (int column = currCoordinates.getX() - radious; column <= currCoordinates.getX() + radious; column++) {
-			for (int row = currCoordinates.getY() - radious; row <= currCoordinates.getY() + radious; row++) {
-				// Are the points on the grid?
-				if (column >= 0 && column < agent.getGrid().getDimensions().getWidth() && row >= 0
-						&& row < agent.getGrid().getDimensions().getHeight()) {
-					// Do the points not belong in the radious?
-					if (column != currCoordinates.getX() - radious && column != currCoordinates.getX() + radious
-							&& row != currCoordinates.getY() - radious && row != currCoordinates.getY() + radious)
-						continue;
-
-					Coordinates coordinates = new Coordinates(column, row);
-					float distance = utils.Utils.getDistance(currCoordinates, coordinates);
-					// Gets the cell which has an obstacle nearby (+/- 1 cell
-					// distance N/S/E/W )
-					if ((agent.getMatrix().getValueIfPossRow(row, column, +1) == Utils.CODE_OBSTACLE_DOOR
-							|| agent.getMatrix().getValueIfPossRow(row, column, -1) == Utils.CODE_OBSTACLE_DOOR
-							|| agent.getMatrix().getValueIfPossCol(row, column, -1) == Utils.CODE_OBSTACLE_DOOR
-							|| agent.getMatrix().getValueIfPossCol(row, column, +1) == Utils.CODE_OBSTACLE_DOOR)
-						&& distance < nearestDistance) {
-						nearestCoordinate = coordinates;
-						nearestDistance = distance;
-					}
-				}
-			}
-		}
+	 * Returns the path to the nearest node that passes the goal test, with a
+	 * single search that stops at the first goal reached.
+	 * 
+	 * @param sourceWorldPosition
+	 * @param goal
+	 * @return Path without the source node or null if no goal can be reached.
+	 */
+	public Path findNearest(Coordinates sourceWorldPosition, GoalTest goal) {
+		PathfindingMetrics.Query query = beginQuery("findNearest");
+		return query.end(pathfinding.FindNearest(sourceWorldPosition, goal));
+	}
 
-		return nearestCoordinate;
+	/**
+	 * Returns the path to the nearest place next to a known obstacle (N/S/E/W)
+	 * that is at least 2 cells away from the agent's position.
+	 * 
+	 * @param currentPosition
+	 * @return Path or null if there is none.
+	 */
+	public Path getNearestObstacle(GridPoint currentPosition) {
+		final int sourceX = currentPosition.getX();
+		final int sourceY = currentPosition.getY();
+		final int gridSizeY = agent.getGrid().getDimensions().getHeight();
+		return findNearest(Coordinates.FromGridPoint(currentPosition), new GoalTest() {
+			@Override
+			public boolean isGoal(int x, int y) {
+				if (Math.abs(x - sourceX) <= 1 && Math.abs(y - sourceY) <= 1)
+					return false;
+				int row = gridSizeY - 1 - y;
+				return hasValue(row + 1, x, Utils.CODE_OBSTACLE_DOOR) || hasValue(row - 1, x, Utils.CODE_OBSTACLE_DOOR)
+						|| hasValue(row, x - 1, Utils.CODE_OBSTACLE_DOOR) || hasValue(row, x + 1, Utils.CODE_OBSTACLE_DOOR);
+			}
+		});
 	}
 
-	// TODO: move this function to utils.
 	/**
-	 * Returns the nearest coordinate that has not yet been discovered based on
-	 * the agent's position.
+	 * Returns the path to the nearest place that has not yet been discovered
+	 * based on the agent's position.
 	 * 
 	 * @param currentPosition
-	 * @return
-	 */
-	public List<Node> getNearestUndiscoveredPlace(GridPoint currentPosition) {
-		Coordinates currCoordinates = utils.Utils.matrixFromWorldPoint(currentPosition,
-				agent.getGrid().getDimensions().getHeight());
-		Coordinates nearestUndiscovered = null;
-
-		int matrixMaxIndexX = agent.getGrid().getDimensions().getWidth() - 1;
-		int leftCellsAmount = matrixMaxIndexX - currCoordinates.getX();
-		int rightCellsAmount = matrixMaxIndexX - (matrixMaxIndexX - currCoordinates.getX());
-		int matrixMaxIndexY = agent.getGrid().getDimensions().getHeight() - 1;
-		int upperCellsAmount = matrixMaxIndexY - currCoordinates.getY();
-		int bottomCellsAmount = matrixMaxIndexY - (matrixMaxIndexY - currCoordinates.getY());
-
-		int[] values = { leftCellsAmount, rightCellsAmount, upperCellsAmount, bottomCellsAmount };
-		int maxDistance = Utils.findMax(values); // Distance from the
-														// current position to
-														// the furthest edge of
-														// the matrix.
-
-		for (int radious = 1; radious <= maxDistance; radious++) {
-			nearestUndiscovered = getEntityInRadius(currCoordinates, radious, Utils.CODE_UNDISCOVERED);
-			if (nearestUndiscovered != null) {
-				List<Node> path = computePath(Coordinates.FromGridPoint(currentPosition),
-						Utils.worldPointFromMatrix(nearestUndiscovered, agent.getGrid().getDimensions().getHeight()));
-				if (path != null)
-					return path;
-				else {
-					// System.out.println("Computed path is null. It shouldn't. Going from " + Coordinates.FromGridPoint(currentPosition).toString() + " to " + Utils.worldPointFromMatrix(nearestUndiscovered, agent.getGrid().getDimensions().getHeight()).toString());
-					// printGrid();
-				}
+	 * @return Path or null if there is none.
+	 */
+	public Path getNearestUndiscoveredPlace(GridPoint currentPosition) {
+		final int gridSizeY = agent.getGrid().getDimensions().getHeight();
+		return findNearest(Coordinates.FromGridPoint(currentPosition), new GoalTest() {
+			@Override
+			public boolean isGoal(int x, int y) {
+				return hasValue(gridSizeY - 1 - y, x, Utils.CODE_UNDISCOVERED);
 			}
-		}
+		});
+	}
 
-		return null;
+	/**
+	 * Returns true if the cell is on the matrix and holds the value.
+	 */
+	private boolean hasValue(int row, int column, int value) {
+		int[][] matrix = agent.getMatrix().getMatrix();
+		return row >= 0 && row < matrix.length && column >= 0 && column < matrix[row].length
+				&& matrix[row][column] == value;
 	}
 
 	/**
-	 * Returns the first coordinate that has a zero on the matrix (is
-	 * undiscovered) distancing 'radious' from the agent.
+	 * Changes the walkability of a node because of an obstacle. The change
+	 * is kept in the agent's own grid, on top of the static layer shared by
+	 * the world, so the other agents' planners don't see it. The layer is
+	 * still told, for the exit field shared by the team.
 	 * 
-	 * @param currCoordinates
-	 * @param radious
-	 * @param cellValue
-	 * @return
+	 * @param coordinates
+	 * @param newWalkable
 	 */
-	private Coordinates getEntityInRadius(Coordinates currCoordinates, int radious, int cellValue) {
-		Coordinates nearestCoordinate = null;
-		float nearestDistance = Float.MAX_VALUE;
+	public void setNodeWalkable(Coordinates coordinates, boolean newWalkable) {
+		Grid grid = pathfinding.getGrid();
+		if (grid.setNodeWalkable(coordinates, newWalkable))
+			onWalkableChanged(grid.getIndex(coordinates.getX(), coordinates.getY()));
+	}
 
-		for (int column = currCoordinates.getX() - radious; column <= currCoordinates.getX() + radious; column++) {
-			for (int row = currCoordinates.getY() - radious; row <= currCoordinates.getY() + radious; row++) {
-				// Are the points on the grid?
-				if (column >= 0 && column < agent.getGrid().getDimensions().getWidth() && row >= 0
-						&& row < agent.getGrid().getDimensions().getHeight()) {
-					// Do the points not belong in the radious?
-					if (column != currCoordinates.getX() - radious && column != currCoordinates.getX() + radious
-							&& row != currCoordinates.getY() - radious && row != currCoordinates.getY() + radious)
-						continue;
+	private void onWalkableChanged(int node) {
+		updatePlanners(node);
+		walkabilityVersion++;
+	}
 
-					Coordinates coordinates = new Coordinates(column, row);
-					float distance = Utils.getDistance(currCoordinates, coordinates);
-					if (agent.getMatrix().getValue(row, column) == cellValue && distance < nearestDistance) {
-						nearestCoordinate = coordinates;
-						nearestDistance = distance;
-					}
-				}
-			}
-		}
-		return nearestCoordinate;
+	private void updatePlanners(int node) {
+		if (dStarLite != null)
+			dStarLite.onWalkableChanged(node);
+		if (hierarchicalPathfinding != null)
+			hierarchicalPathfinding.onWalkableChanged(node);
+		if (landmarkHeuristic != null)
+			landmarkHeuristic.onWalkableChanged(node);
 	}
 
-	public void setNodeWalkable(Coordinates coordinates, boolean newWalkable) {
-		pathfinding.setNodeWalkable(coordinates, newWalkable);
+	/**
+	 * Starts measuring a query, tagged with the agent's current state.
+	 */
+	private PathfindingMetrics.Query beginQuery(String kind) {
+		return PathfindingMetrics.begin(PathfindingMetrics.getKey(getStateClass(), kind));
+	}
+
+	private Class<?> getStateClass() {
+		Object state = agent.getState();
+		return state != null ? state.getClass() : null;
 	}
 
 	public void printGrid() {
@@ -0,0 +1,152 @@
+package algorithms.astar;
+
+import utils.Coordinates;
+
+/**
+ * Windowed cooperative A* (WHCA*, Silver) over the same 8-connected, 10/14
+ * cost grid used by Pathfinding. The agent's next moves are searched in
+ * space and time over a short window, waiting being one of the moves, so
+ * the nodes other agents reserved for a tick are avoided and two agents
+ * never swap places. The cost of the way left after the window is given by
+ * a heuristic, which should be the true distance to the target (a
+ * DistanceField) for agents not to get stuck behind obstacles.
+ */
+public class CooperativePathfinding {
+
+	public static final int DEFAULT_WINDOW = 8;
+
+	private static final int WAIT_COST = 10;
+
+	private Grid grid;
+	private ReservationTable table;
+	private Object agent;
+	private int window;
+	private int side;	// Nodes per side of the square the agent can reach within the window.
+	private long tick;	// Tick of the current search.
+
+	public CooperativePathfinding(Grid grid, ReservationTable table, Object agent) {
+		this(grid, table, agent, DEFAULT_WINDOW);
+	}
+
+	public CooperativePathfinding(Grid grid, ReservationTable table, Object agent, int window) {
+		this.grid = grid;
+		this.table = table;
+		this.agent = agent;
+		this.window = window;
+		side = 2 * window + 1;
+	}
+
+	public int getWindow() {
+		return window;
+	}
+
+	/**
+	 * Finds the agent's cheapest moves for the next ticks.
+	 * @param sourceWorldPosition position of the agent before acting in the tick.
+	 * @param targetNode index of the target node.
+	 * @param heuristic estimate of the cost from any node to the target.
+	 * @param tick current tick.
+	 * @return node the agent is on before the tick (the source) and after
+	 *         each of the next ticks, until the end of the window or the
+	 *         target, or null if the agent can't move nor wait.
+	 */
+	public int[] FindPath(Coordinates sourceWorldPosition, int targetNode, Heuristic heuristic, long tick) {
+		int sourceX = sourceWorldPosition.getX();
+		int sourceY = sourceWorldPosition.getY();
+		int sourceNode = grid.getIndex(sourceX, sourceY);
+		int sourceH = heuristic.estimate(sourceNode, targetNode);
+		if(sourceH >= DistanceField.INFINITY)
+			return null;
+
+		this.tick = tick;
+		SearchState state = SearchState.forCurrentThread(side * side * (window + 1));
+		state.begin();
+		state.open(getState(window, window, 0), 0, sourceH, -1);
+
+		while(state.hasOpenNodes()) {
+			int currentState = state.removeFirst();
+			int step = currentState / (side * side);
+			int currentX = currentState % side - window + sourceX;
+			int currentY = currentState / side % side - window + sourceY;
+			int currentNode = grid.getIndex(currentX, currentY);
+
+			// End of the window or target has been reached.
+			if(step == window || currentNode == targetNode)
+				return ReversePath(state, currentState, sourceX, sourceY);
+
+			for(int x = -1; x <= 1; x++) {
+				for(int y = -1; y <= 1; y++) {
+					int checkX = currentX + x;
+					int checkY = currentY + y;
+					if(!grid.isInside(checkX, checkY))
+						continue;
+
+					int neighbour = grid.getIndex(checkX, checkY);
+					if(!canMove(currentNode, neighbour, step))
+						continue;
+					int h = heuristic.estimate(neighbour, targetNode);
+					if(h >= DistanceField.INFINITY)
+						continue;
+
+					int cost;
+					if(x == 0 && y == 0)
+						cost = WAIT_COST;
+					else
+						cost = x != 0 && y != 0 ? 14 : 10;
+
+					int neighbourState = getState(checkX - sourceX + window, checkY - sourceY + window, step + 1);
+					int newCost = state.getGCost(currentState) + cost;
+					if(!state.isVisited(neighbourState))
+						state.open(neighbourState, newCost, h, currentState);
+					else if(state.isOpen(neighbourState) && newCost < state.getGCost(neighbourState))
+						state.decrease(neighbourState, newCost, currentState);
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Can the agent go from a node to another one (or stay) in the given
+	 * step of the window?
+	 */
+	private boolean canMove(int fromNode, int toNode, int step) {
+		if(!grid.isStaticWalkable(toNode))
+			return false;
+
+		Object owner = table.getOwner(toNode, tick + step);
+		if(owner != null && owner != agent)
+			return false;
+
+		// Two agents can't swap places.
+		Object previousOwner = table.getOwner(toNode, tick + step - 1);
+		if(toNode != fromNode && previousOwner != null && previousOwner != agent
+				&& table.getOwner(fromNode, tick + step) == previousOwner)
+			return false;
+
+		// Agents that don't plan cooperatively block the node they're on,
+		// the moves of the others are known from their reservations.
+		return grid.isWalkable(toNode) || isReservedByOther(toNode, tick - 1) || isReservedByOther(toNode, tick);
+	}
+
+	private boolean isReservedByOther(int node, long reservedTick) {
+		Object owner = table.getOwner(node, reservedTick);
+		return owner != null && owner != agent;
+	}
+
+	private int getState(int windowX, int windowY, int step) {
+		return (step * side + windowY) * side + windowX;
+	}
+
+	private int[] ReversePath(SearchState state, int endState, int sourceX, int sourceY) {
+		int[] path = new int[endState / (side * side) + 1];
+		for(int currentState = endState; currentState >= 0; currentState = state.getParent(currentState)) {
+			int step = currentState / (side * side);
+			int x = currentState % side - window + sourceX;
+			int y = currentState / side % side - window + sourceY;
+			path[step] = grid.getIndex(x, y);
+		}
+		return path;
+	}
+}
@@ -0,0 +1,310 @@
+package algorithms.astar;
+
+import java.util.Arrays;
+
+import utils.Coordinates;
+
+/**
+ * D* Lite (Koenig and Likhachev) over the same 8-connected, 10/14 cost grid
+ * used by Pathfinding. The search runs backwards from the target, so the
+ * search tree stays valid while the agent walks towards it. When nodes
+ * change walkability only the affected part of the tree is repaired on the
+ * next query instead of searching from scratch.
+ * Entering a node that is not walkable costs infinity; leaving one doesn't.
+ */
+public class DStarLite {
+
+	private static final int INFINITY = Integer.MAX_VALUE / 4;
+
+	private Grid grid;
+	private int targetNode = -1;
+	private int lastSourceNode;
+	private int keyModifier;	// km: heuristic drift accumulated while the source moves.
+
+	private int[] g;	// Cost to the target from the last full expansion of the node.
+	private int[] rhs;	// One step lookahead cost to the target.
+	private long[] keys;	// Priority in the open set, see calculateKey().
+	private int[] heapIndex;	// Position in the open set or -1.
+	private int[] heap;
+	private int heapCount;
+
+	private int expandedCount;	// Nodes expanded by the last query.
+	private int heapOperationCount;	// Open set inserts, updates and removals of the last query.
+
+	public DStarLite(Grid grid) {
+		this.grid = grid;
+	}
+
+	public int getTarget() {
+		return targetNode;
+	}
+
+	public int getExpandedCount() {
+		return expandedCount;
+	}
+
+	public int getHeapOperationCount() {
+		return heapOperationCount;
+	}
+
+	/**
+	 * Returns the shortest path between 2 nodes, reusing the previous search
+	 * tree if the target hasn't changed.
+	 * @param sourceWorldPosition
+	 * @param targetWorldPosition
+	 * @return shortest path without the source node or null if there is none.
+	 */
+	public Path FindPath(Coordinates sourceWorldPosition, Coordinates targetWorldPosition) {
+		int sourceNode = grid.getIndex(sourceWorldPosition.getX(), sourceWorldPosition.getY());
+		int newTargetNode = grid.getIndex(targetWorldPosition.getX(), targetWorldPosition.getY());
+
+		expandedCount = 0;
+		heapOperationCount = 0;
+		if(newTargetNode != targetNode)
+			initialize(sourceNode, newTargetNode);
+		else if(sourceNode != lastSourceNode) {
+			keyModifier += grid.getDistance(lastSourceNode, sourceNode);
+			lastSourceNode = sourceNode;
+		}
+
+		computeShortestPath(sourceNode);
+		return ReversePath(sourceNode);
+	}
+
+	/**
+	 * Must be called after a node's walkability changes so the costs of the
+	 * moves into it are updated.
+	 * @param node index of the node.
+	 */
+	public void onWalkableChanged(int node) {
+		if(targetNode < 0)
+			return;
+
+		int x = grid.getX(node);
+		int y = grid.getY(node);
+		for(int dx = -1; dx <= 1; dx++) {
+			for(int dy = -1; dy <= 1; dy++) {
+				if((dx != 0 || dy != 0) && grid.isInside(x + dx, y + dy)) {
+					int predecessor = grid.getIndex(x + dx, y + dy);
+					if(predecessor != targetNode) {
+						rhs[predecessor] = lookahead(predecessor);
+						updateVertex(predecessor);
+					}
+				}
+			}
+		}
+	}
+
+	private void initialize(int sourceNode, int newTargetNode) {
+		if(g == null) {
+			g = new int[grid.getMaxSize()];
+			rhs = new int[grid.getMaxSize()];
+			keys = new long[grid.getMaxSize()];
+			heapIndex = new int[grid.getMaxSize()];
+			heap = new int[grid.getMaxSize()];
+		}
+		Arrays.fill(g, INFINITY);
+		Arrays.fill(rhs, INFINITY);
+		Arrays.fill(heapIndex, -1);
+		heapCount = 0;
+		keyModifier = 0;
+		targetNode = newTargetNode;
+		lastSourceNode = sourceNode;
+
+		rhs[targetNode] = 0;
+		insert(targetNode, calculateKey(targetNode, sourceNode));
+	}
+
+	private void computeShortestPath(int sourceNode) {
+		while(heapCount > 0 && (keys[heap[0]] < calculateKey(sourceNode, sourceNode) || rhs[sourceNode] > g[sourceNode])) {
+			int node = heap[0];
+			long oldKey = keys[node];
+			long newKey = calculateKey(node, sourceNode);
+			expandedCount++;
+
+			if(oldKey < newKey)
+				update(node, newKey);
+			else if(g[node] > rhs[node]) {
+				g[node] = rhs[node];
+				remove(node);
+				int x = grid.getX(node);
+				int y = grid.getY(node);
+				for(int dx = -1; dx <= 1; dx++) {
+					for(int dy = -1; dy <= 1; dy++) {
+						if((dx != 0 || dy != 0) && grid.isInside(x + dx, y + dy)) {
+							int predecessor = grid.getIndex(x + dx, y + dy);
+							if(predecessor != targetNode) {
+								int cost = add(cost(predecessor, node), g[node]);
+								if(cost < rhs[predecessor])
+									rhs[predecessor] = cost;
+								updateVertex(predecessor);
+							}
+						}
+					}
+				}
+			} else {
+				int oldG = g[node];
+				g[node] = INFINITY;
+				int x = grid.getX(node);
+				int y = grid.getY(node);
+				for(int dx = -1; dx <= 1; dx++) {
+					for(int dy = -1; dy <= 1; dy++) {
+						if(!grid.isInside(x + dx, y + dy))
+							continue;
+						int predecessor = grid.getIndex(x + dx, y + dy);
+						if(predecessor != targetNode && (predecessor == node || rhs[predecessor] == add(cost(predecessor, node), oldG)))
+							rhs[predecessor] = lookahead(predecessor);
+						updateVertex(predecessor);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Follows the cheapest successors from the source down to the target.
+	 */
+	private Path ReversePath(int sourceNode) {
+		if(rhs[sourceNode] >= INFINITY)
+			return null;
+
+		Path.Builder path = new Path.Builder();
+		int currentNode = sourceNode;
+		while(currentNode != targetNode) {
+			int nextNode = -1;
+			int nextCost = INFINITY;
+			int x = grid.getX(currentNode);
+			int y = grid.getY(currentNode);
+			for(int dx = -1; dx <= 1; dx++) {
+				for(int dy = -1; dy <= 1; dy++) {
+					if((dx != 0 || dy != 0) && grid.isInside(x + dx, y + dy)) {
+						int successor = grid.getIndex(x + dx, y + dy);
+						int cost = add(cost(currentNode, successor), g[successor]);
+						if(cost < nextCost) {
+							nextCost = cost;
+							nextNode = successor;
+						}
+					}
+				}
+			}
+			if(nextNode < 0 || path.size() >= grid.getMaxSize())
+				return null;
+			path.add(grid.getX(nextNode), grid.getY(nextNode));
+			currentNode = nextNode;
+		}
+		return path.build();
+	}
+
+	private int lookahead(int node) {
+		int best = INFINITY;
+		int x = grid.getX(node);
+		int y = grid.getY(node);
+		for(int dx = -1; dx <= 1; dx++) {
+			for(int dy = -1; dy <= 1; dy++) {
+				if((dx != 0 || dy != 0) && grid.isInside(x + dx, y + dy)) {
+					int successor = grid.getIndex(x + dx, y + dy);
+					int cost = add(cost(node, successor), g[successor]);
+					if(cost < best)
+						best = cost;
+				}
+			}
+		}
+		return best;
+	}
+
+	private int cost(int from, int to) {
+		if(!grid.isWalkable(to))
+			return INFINITY;
+		return grid.getDistance(from, to);
+	}
+
+	private int add(int a, int b) {
+		return Math.min(INFINITY, a + b);
+	}
+
+	/**
+	 * Packs [min(g, rhs) + h + km; min(g, rhs)] so keys compare as longs.
+	 */
+	private long calculateKey(int node, int sourceNode) {
+		int minimum = Math.min(g[node], rhs[node]);
+		long primary = (long) minimum + grid.getDistance(sourceNode, node) + keyModifier;
+		return (primary << 32) | minimum;
+	}
+
+	private void updateVertex(int node) {
+		boolean inconsistent = g[node] != rhs[node];
+		if(inconsistent && heapIndex[node] >= 0)
+			update(node, calculateKey(node, lastSourceNode));
+		else if(inconsistent)
+			insert(node, calculateKey(node, lastSourceNode));
+		else if(heapIndex[node] >= 0)
+			remove(node);
+	}
+
+	private void insert(int node, long key) {
+		heapOperationCount++;
+		keys[node] = key;
+		heapIndex[node] = heapCount;
+		heap[heapCount] = node;
+		heapCount++;
+		sortUp(node);
+	}
+
+	private void update(int node, long key) {
+		heapOperationCount++;
+		long oldKey = keys[node];
+		keys[node] = key;
+		if(key < oldKey)
+			sortUp(node);
+		else
+			sortDown(node);
+	}
+
+	private void remove(int node) {
+		heapOperationCount++;
+		int index = heapIndex[node];
+		heapCount--;
+		heapIndex[node] = -1;
+		if(index == heapCount)
+			return;
+		int lastNode = heap[heapCount];
+		heap[index] = lastNode;
+		heapIndex[lastNode] = index;
+		sortUp(lastNode);
+		sortDown(lastNode);
+	}
+
+	private void sortUp(int node) {
+		int index = heapIndex[node];
+		while(index > 0) {
+			int parentIndex = (index - 1) / 2;
+			int parentNode = heap[parentIndex];
+			if(keys[parentNode] <= keys[node])
+				break;
+			heap[index] = parentNode;
+			heapIndex[parentNode] = index;
+			index = parentIndex;
+		}
+		heap[index] = node;
+		heapIndex[node] = index;
+	}
+
+	private void sortDown(int node) {
+		int index = heapIndex[node];
+		while(true) {
+			int childIndex = index * 2 + 1;
+			if(childIndex >= heapCount)
+				break;
+			if(childIndex + 1 < heapCount && keys[heap[childIndex + 1]] < keys[heap[childIndex]])
+				childIndex++;
+			int childNode = heap[childIndex];
+			if(keys[node] <= keys[childNode])
+				break;
+			heap[index] = childNode;
+			heapIndex[childNode] = index;
+			index = childIndex;
+		}
+		heap[index] = node;
+		heapIndex[node] = index;
+	}
+}
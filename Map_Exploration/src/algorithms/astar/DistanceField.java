@@ -0,0 +1,200 @@
+package algorithms.astar;
+
+import java.util.Arrays;
+
+/**
+ * Cost from every node of a grid to a single root node (Dijkstra), using
+ * the same 10/14 move costs as Pathfinding. Anyone can then read the next
+ * step towards the root in O(1) instead of searching.
+ * When a node's walkability changes only the affected part of the field is
+ * repaired: blocking a node recomputes the nodes that used to go through it,
+ * freeing a node propagates the shorter costs it opens up.
+ * Only the static obstacles count, agents standing on nodes of the grid
+ * don't block them.
+ */
+public class DistanceField implements Heuristic {
+
+	public static final int INFINITY = Integer.MAX_VALUE / 4;
+
+	private Grid grid;
+	private int rootNode;
+	private int[] distances;
+	private int[] nextNodes;	// Next node towards the root, or -1.
+	private int[] marks;	// Scratch stamps for the nodes affected by a change.
+	private int currentMark;
+	private int version;	// Bumped whenever the field changes.
+
+	public DistanceField(Grid grid, int rootNode) {
+		this.grid = grid;
+		this.rootNode = rootNode;
+		distances = new int[grid.getMaxSize()];
+		nextNodes = new int[grid.getMaxSize()];
+		marks = new int[grid.getMaxSize()];
+		recompute();
+	}
+
+	public int getRoot() {
+		return rootNode;
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the cost of the shortest path from a node to the root.
+	 * @param node
+	 * @return cost or INFINITY if the root can't be reached.
+	 */
+	public int getDistance(int node) {
+		return distances[node];
+	}
+
+	/**
+	 * Returns the exact cost to the root, which must be the target node.
+	 */
+	@Override
+	public int estimate(int node, int targetNode) {
+		return distances[node];
+	}
+
+	/**
+	 * Returns the next node on the shortest path from a node to the root.
+	 * @param node
+	 * @return node index or -1 if the root can't be reached.
+	 */
+	public int getNextNode(int node) {
+		return nextNodes[node];
+	}
+
+	/**
+	 * Computes the whole field from scratch.
+	 */
+	public void recompute() {
+		Arrays.fill(distances, INFINITY);
+		Arrays.fill(nextNodes, -1);
+		SearchState state = SearchState.forCurrentThread(grid.getMaxSize());
+		state.begin();
+		if(grid.isStaticWalkable(rootNode)) {
+			distances[rootNode] = 0;
+			state.open(rootNode, 0, 0, -1);
+		}
+		propagate(state);
+		version++;
+	}
+
+	/**
+	 * Must be called after a node's walkability changes.
+	 * @param node index of the node.
+	 */
+	public void onWalkableChanged(int node) {
+		if(node == rootNode) {
+			recompute();
+			return;
+		}
+		SearchState state = SearchState.forCurrentThread(grid.getMaxSize());
+		state.begin();
+		if(grid.isStaticWalkable(node)) {
+			if(lookahead(node))
+				state.open(node, distances[node], 0, nextNodes[node]);
+		} else if(distances[node] < INFINITY) {
+			int[] affected = collectDependants(node);
+			for(int affectedNode : affected) {
+				distances[affectedNode] = INFINITY;
+				nextNodes[affectedNode] = -1;
+			}
+			for(int affectedNode : affected) {
+				if(affectedNode != node && grid.isStaticWalkable(affectedNode) && lookahead(affectedNode))
+					state.open(affectedNode, distances[affectedNode], 0, nextNodes[affectedNode]);
+			}
+		}
+		propagate(state);
+		version++;
+	}
+
+	/**
+	 * Returns the node and every node whose way to the root goes through it.
+	 */
+	private int[] collectDependants(int node) {
+		currentMark++;
+		int[] stack = new int[16];
+		int count = 0;
+		stack[count++] = node;
+		marks[node] = currentMark;
+		for(int i = 0; i < count; i++) {
+			int currentNode = stack[i];
+			int currentX = grid.getX(currentNode);
+			int currentY = grid.getY(currentNode);
+			for(int x = currentX - 1; x <= currentX + 1; x++) {
+				for(int y = currentY - 1; y <= currentY + 1; y++) {
+					if(!grid.isInside(x, y))
+						continue;
+					int neighbour = grid.getIndex(x, y);
+					if(nextNodes[neighbour] == currentNode && marks[neighbour] != currentMark) {
+						marks[neighbour] = currentMark;
+						if(count == stack.length)
+							stack = Arrays.copyOf(stack, count * 2);
+						stack[count++] = neighbour;
+					}
+				}
+			}
+		}
+		return Arrays.copyOf(stack, count);
+	}
+
+	/**
+	 * Takes the cheapest way to the root through a neighbour.
+	 * @return true if the node's distance went down.
+	 */
+	private boolean lookahead(int node) {
+		boolean improved = false;
+		int nodeX = grid.getX(node);
+		int nodeY = grid.getY(node);
+		for(int x = nodeX - 1; x <= nodeX + 1; x++) {
+			for(int y = nodeY - 1; y <= nodeY + 1; y++) {
+				if(!grid.isInside(x, y))
+					continue;
+				int neighbour = grid.getIndex(x, y);
+				if(neighbour == node || distances[neighbour] >= INFINITY)
+					continue;
+				int cost = distances[neighbour] + grid.getDistance(node, neighbour);
+				if(cost < distances[node]) {
+					distances[node] = cost;
+					nextNodes[node] = neighbour;
+					improved = true;
+				}
+			}
+		}
+		return improved;
+	}
+
+	/**
+	 * Dijkstra outwards from the open nodes, lowering the distances of the
+	 * walkable nodes around them.
+	 */
+	private void propagate(SearchState state) {
+		while(state.hasOpenNodes()) {
+			int currentNode = state.removeFirst();
+			int currentX = grid.getX(currentNode);
+			int currentY = grid.getY(currentNode);
+			for(int x = currentX - 1; x <= currentX + 1; x++) {
+				for(int y = currentY - 1; y <= currentY + 1; y++) {
+					if(!grid.isInside(x, y))
+						continue;
+					int neighbour = grid.getIndex(x, y);
+					if(neighbour == currentNode || !grid.isStaticWalkable(neighbour))
+						continue;
+					int cost = distances[currentNode] + grid.getDistance(neighbour, currentNode);
+					if(cost < distances[neighbour]) {
+						distances[neighbour] = cost;
+						nextNodes[neighbour] = currentNode;
+						if(state.isOpen(neighbour))
+							state.decrease(neighbour, cost, currentNode);
+						else
+							state.open(neighbour, cost, 0, currentNode);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,402 @@
+package algorithms.astar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compressed path database: the first move of a shortest path from every
+ * node to every other node of a snapshot of a StaticLayer. One Dijkstra
+ * search per source gives the set of optimal first moves towards each
+ * target; the targets of a source are then split, in index order, into runs
+ * that share at least one optimal move, and only the start of each run is
+ * stored. A query is a binary search over the runs of the source, with no
+ * search of the grid.
+ * Building takes one search per walkable node, so it's meant for maps that
+ * are fully known. It's done in the background on the PathService's worker
+ * threads, callers keep using another planner until isValid(). The table
+ * only answers for the layer version it was built for: forWorld() stops
+ * building a table once the layer changes, and builds a new one when the
+ * layer has settled for SETTLE_TIME_MS.
+ */
+public class FirstMoveTable {
+
+	private static final int[] MOVE_X = { -1, 0, 1, -1, 1, -1, 0, 1 };
+	private static final int[] MOVE_Y = { -1, -1, -1, 0, 0, 1, 1, 1 };
+	private static final int MOVE_BITS = 3;
+	private static final int ALL_MOVES = (1 << MOVE_X.length) - 1;
+	private static final int BUCKET_COUNT = 8;	// Power of 2 above the highest move cost.
+
+	/**
+	 * Time the layer must go without changes before the table is rebuilt.
+	 */
+	public static final long SETTLE_TIME_MS = 500;
+
+	private static final Map<Object, WorldTable> tables = new WeakHashMap<Object, WorldTable>();
+
+	private Grid grid;	// Snapshot the table was built for, never refreshed.
+	private int paddedSizeX;	// Row size of the building layout, with a border of blocked nodes.
+	private boolean[] paddedWalkable;
+	private int[] moveOffsets;	// Index offset of every move in the building layout.
+	private int[] components;	// Connected component of every node, -1 for not walkable.
+	private int[][] runs;	// Per source: first target << MOVE_BITS | move of each run.
+	private final CountDownLatch finished = new CountDownLatch(1);	// Counted down once built or failed.
+	private final AtomicInteger pendingTasks = new AtomicInteger();
+	private volatile Throwable failure;
+	private volatile boolean cancelled;
+
+	/**
+	 * Starts building the table for the current snapshot of the layer, with
+	 * one task per group of sources on the PathService's worker threads.
+	 * @param layer
+	 */
+	public FirstMoveTable(StaticLayer layer) {
+		grid = new Grid(layer);
+		PathService.getPool().execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					startBuild();
+				} catch (RuntimeException | Error e) {
+					fail(e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Lays out the grid for the searches and submits them.
+	 */
+	private void startBuild() {
+		components = findComponents();
+		runs = new int[grid.getMaxSize()][];
+
+		// Searching a copy with a blocked border needs no bounds nor layer lookups.
+		paddedSizeX = grid.getGridSizeX() + 2;
+		paddedWalkable = new boolean[paddedSizeX * (grid.getGridSizeY() + 2)];
+		for(int node = 0; node < grid.getMaxSize(); node++)
+			paddedWalkable[getPaddedIndex(node)] = grid.isWalkable(node);
+		moveOffsets = new int[MOVE_X.length];
+		for(int move = 0; move < MOVE_X.length; move++)
+			moveOffsets[move] = MOVE_Y[move] * paddedSizeX + MOVE_X[move];
+
+		int taskCount = Runtime.getRuntime().availableProcessors() * 4;
+		pendingTasks.set(taskCount);
+		for(int task = 0; task < taskCount; task++) {
+			final int firstSource = task;
+			final int sourceStep = taskCount;
+			PathService.getPool().execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						Scratch scratch = new Scratch(paddedWalkable.length);
+						for(int source = firstSource; source < grid.getMaxSize() && !cancelled; source += sourceStep) {
+							if(grid.isWalkable(source))
+								runs[source] = compress(findFirstMoves(source, scratch));
+						}
+					} catch (RuntimeException | Error e) {
+						fail(e);
+						return;
+					}
+					// The last task to finish publishes the table.
+					if(pendingTasks.decrementAndGet() == 0)
+						finished.countDown();
+				}
+			});
+		}
+	}
+
+	private void fail(Throwable e) {
+		failure = e;
+		finished.countDown();
+	}
+
+	/**
+	 * Stops the build of a table that won't be used.
+	 */
+	private void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Returns the table of a world, starting to build it if there is none.
+	 * A table built for an older version of the layer is cancelled, and is
+	 * replaced once the layer went SETTLE_TIME_MS without changes, or right
+	 * away if its build failed. The table may not be built yet or be stale,
+	 * see isValid().
+	 * @param world the agents' grid, used as key.
+	 * @param gridSizeX
+	 * @param gridSizeY
+	 * @return table shared by all the agents of the world.
+	 */
+	public static synchronized FirstMoveTable forWorld(Object world, int gridSizeX, int gridSizeY) {
+		StaticLayer layer = StaticLayer.forWorld(world, gridSizeX, gridSizeY);
+		int version = layer.getSnapshot().getVersion();
+		long now = System.nanoTime();
+		WorldTable worldTable = tables.get(world);
+		if(worldTable == null) {
+			worldTable = new WorldTable();
+			tables.put(world, worldTable);
+		}
+		if(worldTable.version != version) {
+			worldTable.version = version;
+			worldTable.changeTime = now;
+		}
+
+		FirstMoveTable table = worldTable.table;
+		if(table == null || table.getFailure() != null && table.getLayerVersion() == version) {
+			worldTable.table = new FirstMoveTable(layer);
+		} else if(table.getLayerVersion() != version) {
+			table.cancel();
+			if(now - worldTable.changeTime >= SETTLE_TIME_MS * 1000000)
+				worldTable.table = new FirstMoveTable(layer);
+		}
+		return worldTable.table;
+	}
+
+	/**
+	 * Returns true if the table is built and was built for the given layer
+	 * version.
+	 */
+	public boolean isValid(int layerVersion) {
+		return isBuilt() && grid.getLayerVersion() == layerVersion;
+	}
+
+	public boolean isBuilt() {
+		return finished.getCount() == 0 && failure == null && !cancelled;
+	}
+
+	/**
+	 * Waits for the build to finish.
+	 * @return true if the table was built, false if the build failed.
+	 * @throws InterruptedException
+	 */
+	public boolean awaitBuild() throws InterruptedException {
+		finished.await();
+		return failure == null;
+	}
+
+	/**
+	 * Returns what made the build fail, or null.
+	 */
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	public int getLayerVersion() {
+		return grid.getLayerVersion();
+	}
+
+	/**
+	 * Returns the next node of a shortest path between 2 nodes.
+	 * @param sourceNode
+	 * @param targetNode
+	 * @return node index, or -1 if the target can't be reached or is the
+	 *         source.
+	 */
+	public int getNextNode(int sourceNode, int targetNode) {
+		if(sourceNode == targetNode || components[targetNode] < 0 || components[sourceNode] != components[targetNode])
+			return -1;
+		int[] sourceRuns = runs[sourceNode];
+		int low = 0;
+		int high = sourceRuns.length - 1;
+		while(low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if(sourceRuns[middle] >>> MOVE_BITS <= targetNode)
+				low = middle;
+			else
+				high = middle - 1;
+		}
+		int move = sourceRuns[low] & ((1 << MOVE_BITS) - 1);
+		return grid.getIndex(grid.getX(sourceNode) + MOVE_X[move], grid.getY(sourceNode) + MOVE_Y[move]);
+	}
+
+	/**
+	 * Returns the shortest path between 2 nodes by following the first
+	 * moves.
+	 * @param sourceNode
+	 * @param targetNode
+	 * @return path without the source node, or null if there is none.
+	 */
+	public Path getPath(int sourceNode, int targetNode) {
+		if(sourceNode == targetNode)
+			return new Path(new int[0]);
+		Path.Builder path = new Path.Builder();
+		for(int node = getNextNode(sourceNode, targetNode); node >= 0; node = getNextNode(node, targetNode)) {
+			path.add(grid.getX(node), grid.getY(node));
+			if(node == targetNode)
+				return path.build();
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the number of runs stored over all the sources.
+	 */
+	public long getRunCount() {
+		long count = 0;
+		for(int[] sourceRuns : runs) {
+			if(sourceRuns != null)
+				count += sourceRuns.length;
+		}
+		return count;
+	}
+
+	/**
+	 * Table of a world and the last layer version seen for it.
+	 */
+	private static class WorldTable {
+		private FirstMoveTable table;
+		private int version = -1;
+		private long changeTime;	// When the version was first seen.
+	}
+
+	/**
+	 * Scratch arrays of one building thread.
+	 */
+	private static class Scratch {
+
+		private int[] costs;
+		private int[] moves;
+		private int[] closed;	// Stamp of the search that closed the node.
+		private int stamp;
+		private int[][] buckets = new int[BUCKET_COUNT][];
+		private int[] bucketSizes = new int[BUCKET_COUNT];
+
+		private Scratch(int maxSize) {
+			costs = new int[maxSize];
+			moves = new int[maxSize];
+			closed = new int[maxSize];
+			for(int bucket = 0; bucket < BUCKET_COUNT; bucket++)
+				buckets[bucket] = new int[64];
+		}
+
+		private void push(int node, int cost) {
+			int bucket = cost & (BUCKET_COUNT - 1);
+			if(bucketSizes[bucket] == buckets[bucket].length)
+				buckets[bucket] = Arrays.copyOf(buckets[bucket], bucketSizes[bucket] * 2);
+			buckets[bucket][bucketSizes[bucket]++] = node;
+		}
+	}
+
+	/**
+	 * Dijkstra from the source keeping, for every node, the set of first
+	 * moves (bit i for MOVE_X[i], MOVE_Y[i]) of its shortest paths. Move
+	 * costs are halved to 5 and 7 so the open set can be a ring of buckets,
+	 * one per cost (Dial's algorithm), instead of a heap.
+	 * @return first moves of every node in the building layout, 0 for the
+	 *         source and the nodes that can't be reached.
+	 */
+	private int[] findFirstMoves(int sourceNode, Scratch scratch) {
+		int[] costs = scratch.costs;
+		int[] moves = scratch.moves;
+		int[] closed = scratch.closed;
+		int stamp = ++scratch.stamp;
+		Arrays.fill(costs, Integer.MAX_VALUE);
+		Arrays.fill(moves, 0);
+
+		int paddedSource = getPaddedIndex(sourceNode);
+		costs[paddedSource] = 0;
+		scratch.push(paddedSource, 0);
+		int pending = 1;
+		for(int cost = 0; pending > 0; cost++) {
+			int bucket = cost & (BUCKET_COUNT - 1);
+			// Moves cost 5 or 7, so nodes are pushed 5 or 7 buckets ahead,
+			// never in the bucket being read.
+			for(int i = 0; i < scratch.bucketSizes[bucket]; i++) {
+				int currentNode = scratch.buckets[bucket][i];
+				if(costs[currentNode] != cost || closed[currentNode] == stamp)
+					continue;
+				closed[currentNode] = stamp;
+
+				for(int move = 0; move < MOVE_X.length; move++) {
+					int neighbour = currentNode + moveOffsets[move];
+					if(!paddedWalkable[neighbour] || closed[neighbour] == stamp)
+						continue;
+
+					int firstMoves = currentNode == paddedSource ? 1 << move : moves[currentNode];
+					int newCostToNeighbour = cost + (MOVE_X[move] != 0 && MOVE_Y[move] != 0 ? 7 : 5);
+					if(newCostToNeighbour < costs[neighbour]) {
+						costs[neighbour] = newCostToNeighbour;
+						moves[neighbour] = firstMoves;
+						scratch.push(neighbour, newCostToNeighbour);
+						pending++;
+					} else if(newCostToNeighbour == costs[neighbour])
+						moves[neighbour] |= firstMoves;
+				}
+			}
+			pending -= scratch.bucketSizes[bucket];
+			scratch.bucketSizes[bucket] = 0;
+		}
+		moves[paddedSource] = 0;
+		return moves;
+	}
+
+	private int getPaddedIndex(int node) {
+		return (grid.getY(node) + 1) * paddedSizeX + grid.getX(node) + 1;
+	}
+
+	/**
+	 * Splits the targets into runs that keep at least one common first
+	 * move. Targets that can't be reached, and the source, take any move.
+	 */
+	private int[] compress(int[] moves) {
+		int[] sourceRuns = new int[16];
+		int runCount = 0;
+		int runStart = 0;
+		int common = ALL_MOVES;
+		for(int target = 0; target < grid.getMaxSize(); target++) {
+			int paddedMoves = moves[getPaddedIndex(target)];
+			int targetMoves = paddedMoves != 0 ? paddedMoves : ALL_MOVES;
+			if((common & targetMoves) == 0) {
+				if(runCount == sourceRuns.length)
+					sourceRuns = Arrays.copyOf(sourceRuns, runCount * 2);
+				sourceRuns[runCount++] = runStart << MOVE_BITS | Integer.numberOfTrailingZeros(common);
+				runStart = target;
+				common = ALL_MOVES;
+			}
+			common &= targetMoves;
+		}
+		if(runCount == sourceRuns.length)
+			sourceRuns = Arrays.copyOf(sourceRuns, runCount + 1);
+		sourceRuns[runCount++] = runStart << MOVE_BITS | Integer.numberOfTrailingZeros(common);
+		return Arrays.copyOf(sourceRuns, runCount);
+	}
+
+	/**
+	 * Labels the connected walkable nodes with the same number.
+	 */
+	private int[] findComponents() {
+		int[] labels = new int[grid.getMaxSize()];
+		Arrays.fill(labels, -1);
+		int[] stack = new int[grid.getMaxSize()];
+		int componentCount = 0;
+		for(int node = 0; node < labels.length; node++) {
+			if(labels[node] >= 0 || !grid.isWalkable(node))
+				continue;
+			int stackSize = 0;
+			stack[stackSize++] = node;
+			labels[node] = componentCount;
+			while(stackSize > 0) {
+				int currentNode = stack[--stackSize];
+				for(int move = 0; move < MOVE_X.length; move++) {
+					int checkX = grid.getX(currentNode) + MOVE_X[move];
+					int checkY = grid.getY(currentNode) + MOVE_Y[move];
+					if(!grid.isInside(checkX, checkY))
+						continue;
+					int neighbour = grid.getIndex(checkX, checkY);
+					if(labels[neighbour] < 0 && grid.isWalkable(neighbour)) {
+						labels[neighbour] = componentCount;
+						stack[stackSize++] = neighbour;
+					}
+				}
+			}
+			componentCount++;
+		}
+		return labels;
+	}
+}
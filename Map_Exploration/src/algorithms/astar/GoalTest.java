@@ -0,0 +1,14 @@
+package algorithms.astar;
+
+/**
+ * Condition a node must meet to end a nearest goal search.
+ */
+public interface GoalTest {
+
+	/**
+	 * @param x world position of the node.
+	 * @param y world position of the node.
+	 * @return true if the search can stop at this node.
+	 */
+	boolean isGoal(int x, int y);
+}
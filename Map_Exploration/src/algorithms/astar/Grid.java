@@ -1,73 +1,230 @@
 package algorithms.astar;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import utils.Coordinates;
 
+/**
+ * Walkability of every node, one bit per node in row-major order (see
+ * getIndex()). Searches keep their values in SearchState and return
+ * Paths of packed positions, so no object is created per node.
+ * Static obstacles are read from a snapshot of a StaticLayer, which can be
+ * shared with other grids. Nodes occupied by other agents are read from a
+ * bit set of an OccupancyLayer, so they never change the stored
+ * walkability either.
+ * An overlay grid only sees the changes made through it. It reads the
+ * latest snapshot like the others, and keeps the few nodes where its own
+ * view differs from it in a WalkabilityDiff: obstacles found by the team
+ * it doesn't know about yet, or the other way round. The more the agents
+ * share what they find, the smaller the differences get.
+ */
 public class Grid {
 
-	private Node[][] grid;
+	private StaticLayer layer;
+	private long[][] chunks;	// Chunks of the layer's snapshot, bit set when the node is walkable.
+	private int layerVersion;	// Version of the layer's snapshot.
+	private WalkabilityDiff diff;	// Nodes where an overlay differs from the snapshot, null if not an overlay.
+	private long[] occupied;	// Occupied nodes, or null.
+	private int ignoredNode = -1;	// Node that is never occupied, the agent's own.
 	private int gridSizeX;
 	private int gridSizeY;
 	
 	public Grid(int gridSizeX, int gridSizeY) {
-		grid = new Node[gridSizeY][gridSizeX];
-		this.gridSizeX = gridSizeX;
-		this.gridSizeY = gridSizeY;
-		
-		for(int row = 0; row < gridSizeY; row++) {
-			for(int column = 0; column < gridSizeX; column++)
-				grid[row][column] = new Node(true, new Coordinates(column, row));
-		}
+		this(new StaticLayer(gridSizeX, gridSizeY));
+	}
+	
+	public Grid(StaticLayer layer) {
+		this(layer, false);
 	}
 	
 	/**
-	 * Returns all the node's neighbours.
-	 * @param node to get neighbours from.
-	 * @return list of neighbours.
+	 * @param layer
+	 * @param overlay true to only see the changes made through this grid,
+	 *            starting with every node walkable, false to read the
+	 *            latest snapshot of the layer.
 	 */
-	public List<Node> getNeighbours(Node node) {
-		List<Node> neighbours = new ArrayList<Node>();
-		
-		for(int x = -1; x <= 1; x++) {
-			for(int y = -1; y <= 1; y++) {
-				if(x == 0 && y == 0)
-					continue;
-				
-				int checkX = node.getWorldPosition().getX() + x;
-				int checkY = node.getWorldPosition().getY() + y;
-				if(checkX >= 0 && checkX < gridSizeX && checkY >= 0 && checkY < gridSizeY)
-					neighbours.add(grid[checkY][checkX]);
-			}
+	public Grid(StaticLayer layer, boolean overlay) {
+		this.layer = layer;
+		gridSizeX = layer.getGridSizeX();
+		gridSizeY = layer.getGridSizeY();
+		if(overlay) {
+			// Caught up with the layer on the first refresh, without changing the view.
+			chunks = layer.getBaseSnapshot().chunks;
+			layerVersion = layer.getBaseSnapshot().version;
+			diff = new WalkabilityDiff(getMaxSize());
+		} else
+			refresh();
+	}
+	
+	/**
+	 * Returns a copy of this grid reading the same snapshot of the layer
+	 * and the same occupied nodes. The copy is never refreshed, so it can be
+	 * searched from another thread while this grid changes.
+	 * @return copy of the grid.
+	 */
+	public Grid copy() {
+		Grid copy = new Grid(layer, false);
+		copy.chunks = chunks;
+		copy.layerVersion = layerVersion;
+		copy.diff = diff != null ? diff.copy() : null;
+		copy.occupied = occupied;
+		copy.ignoredNode = ignoredNode;
+		return copy;
+	}
+	
+	public StaticLayer getLayer() {
+		return layer;
+	}
+	
+	/**
+	 * Returns the version of the layer's snapshot this grid reads from.
+	 */
+	public int getLayerVersion() {
+		return layerVersion;
+	}
+	
+	public boolean isOverlay() {
+		return diff != null;
+	}
+	
+	/**
+	 * Reads the latest snapshot of the layer, showing the changes made
+	 * through other grids. An overlay keeps showing what it did: every
+	 * change logged since its snapshot flips the node back in its diff.
+	 */
+	public void refresh() {
+		StaticLayer.Snapshot snapshot = layer.getSnapshot();
+		if(diff != null) {
+			for(int version = layerVersion; version < snapshot.version; version++)
+				diff.flip(layer.getChange(version));
 		}
+		chunks = snapshot.chunks;
+		layerVersion = snapshot.version;
+	}
+	
+	/**
+	 * Returns the index of a position in a row-major layout of the grid.
+	 * @param x
+	 * @param y
+	 * @return index between 0 and getMaxSize() - 1.
+	 */
+	public int getIndex(int x, int y) {
+		return y * gridSizeX + x;
+	}
+	
+	public int getX(int index) {
+		return index % gridSizeX;
+	}
+	
+	public int getY(int index) {
+		return index / gridSizeX;
+	}
+	
+	/**
+	 * Returns the cost of the cheapest obstacle free path between 2 nodes,
+	 * 10 per straight move and 14 per diagonal move.
+	 * @param source
+	 * @param target
+	 * @return distance between source and target nodes.
+	 */
+	public int getDistance(int source, int target) {
+		int distX = Math.abs(getX(target) - getX(source));
+		int distY = Math.abs(getY(target) - getY(source));
 		
-		return neighbours;
+		if(distX > distY)
+			return 14 * distY + 10 * (distX - distY);
+		return 14 * distX + 10 * (distY - distX);
+	}
+	
+	public boolean isInside(int x, int y) {
+		return x >= 0 && x < gridSizeX && y >= 0 && y < gridSizeY;
+	}
+	
+	public int getMaxSize() {
+		return gridSizeX * gridSizeY;
+	}
+	
+	public int getGridSizeX() {
+		return gridSizeX;
+	}
+	
+	public int getGridSizeY() {
+		return gridSizeY;
 	}
 	
-	public Node getNode(Coordinates coordinates) {
-		return grid[coordinates.getY()][coordinates.getX()];
+	public boolean isWalkable(int index) {
+		int chunk = index >>> StaticLayer.CHUNK_SHIFT;
+		int word = (index >>> 6) & StaticLayer.WORD_MASK;
+		long bits = chunks[chunk][word];
+		if(diff != null)
+			bits ^= diff.getMask(index >>> 6);
+		if((bits & (1L << index)) == 0)
+			return false;
+		return !isOccupied(index);
 	}
 	
 	/**
-	 * Returns the node that is in the specified world position.
-	 * @param worldPosition
-	 * @return node that is in the world position.
+	 * Returns the walkability of a node in the layer, ignoring the occupied
+	 * nodes.
 	 */
-	public Node nodeFromWorldPoint(Coordinates worldPosition) {
-		return grid[gridSizeY - 1 - worldPosition.getY()][worldPosition.getX()];
+	public boolean isStaticWalkable(int index) {
+		long bits = chunks[index >>> StaticLayer.CHUNK_SHIFT][(index >>> 6) & StaticLayer.WORD_MASK];
+		if(diff != null)
+			bits ^= diff.getMask(index >>> 6);
+		return (bits & (1L << index)) != 0;
 	}
 	
-	public void setNodeWalkable(Coordinates coordinates, boolean newWalkable) {
-		//nodeFromWorldPoint(coordinates).setWalkable(newWalkable);
-		//printGrid();
-		grid[coordinates.getY()][coordinates.getX()].setWalkable(newWalkable);
+	public boolean isWalkable(Coordinates coordinates) {
+		return isWalkable(getIndex(coordinates.getX(), coordinates.getY()));
+	}
+	
+	/**
+	 * Changes the walkability of a static node in the layer, so every grid
+	 * reading it sees the change once refreshed. This grid is refreshed, and
+	 * an overlay also changes its own view.
+	 * @param coordinates
+	 * @param newWalkable
+	 * @return true if the node changed in this grid.
+	 */
+	public boolean setNodeWalkable(Coordinates coordinates, boolean newWalkable) {
+		int index = getIndex(coordinates.getX(), coordinates.getY());
+		boolean changed = layer.setWalkable(index, newWalkable);
+		refresh();
+		if(diff == null)
+			return changed;
+		if(isStaticWalkable(index) == newWalkable)
+			return false;
+		diff.flip(index);
+		return true;
+	}
+	
+	public boolean isOccupied(int index) {
+		return occupied != null && index != ignoredNode && OccupancyLayer.isSet(occupied, index);
+	}
+	
+	public long[] getOccupied() {
+		return occupied;
+	}
+	
+	public int getIgnoredNode() {
+		return ignoredNode;
+	}
+	
+	/**
+	 * Makes the occupied nodes not walkable in this grid, on top of the
+	 * layer. The bit set is only read, so it can be shared by many grids.
+	 * @param occupied bit set of the occupied nodes (see OccupancyLayer), or
+	 *            null for none.
+	 * @param ignoredNode node to keep walkable even if occupied, usually the
+	 *            one the agent stands on, or -1.
+	 */
+	public void setOccupied(long[] occupied, int ignoredNode) {
+		this.occupied = occupied;
+		this.ignoredNode = ignoredNode;
 	}
 	
 	public void printGrid() {
 		for(int row = 0; row < gridSizeY; row++) {
 			for(int column = 0; column < gridSizeX; column++)
-				System.out.print((grid[row][column].getWalkable() ? "1" : "0") + " | ");
+				System.out.print((isWalkable(getIndex(column, row)) ? "1" : "0") + " | ");
 			System.out.println(" " + (gridSizeY - 1 - row));
 		}
 		
@@ -0,0 +1,16 @@
+package algorithms.astar;
+
+/**
+ * Estimate of the cost of the cheapest path between 2 nodes, used to guide
+ * searches towards their target. Estimates must never be higher than the
+ * real cost for searches to return shortest paths.
+ */
+public interface Heuristic {
+
+	/**
+	 * @param node index of the node the estimate is from.
+	 * @param targetNode index of the target node.
+	 * @return estimated cost.
+	 */
+	int estimate(int node, int targetNode);
+}
@@ -0,0 +1,497 @@
+package algorithms.astar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import utils.Coordinates;
+
+/**
+ * HPA* (Botea, Mueller and Schaeffer) on top of Pathfinding's grid.
+ * The grid is split into square clusters. Walkable stretches of the border
+ * between 2 clusters become entrances, as do the diagonal steps across a
+ * border that has no straight crossing next to them, and the costs between
+ * the entrances of each cluster are cached. A query searches this small abstract graph
+ * first and then refines each abstract edge with an A* bounded to a single
+ * cluster. Paths are near optimal, not optimal.
+ * Walkability changes only mark their cluster as dirty; dirty clusters and
+ * the neighbours whose shared entrances changed are rebuilt on the next query.
+ * The abstract graph only knows the static obstacles, and so do the costs
+ * from the source and target to their entrances. Nodes occupied by agents
+ * are avoided when refining: an abstract edge they block is replaced by a
+ * detour with an A* bounded to the rectangle around it and the next
+ * abstract nodes, grown by a cluster.
+ */
+public class HierarchicalPathfinding {
+
+	public static final int DEFAULT_CLUSTER_SIZE = 10;
+
+	private static final int INFINITY = Integer.MAX_VALUE / 4;
+	private static final int MAX_ENTRANCE_WIDTH = 6;	// Wider stretches get one entrance at each end.
+	private static final int DIAGONAL_CROSSING = 1;	// From a corner point's -x-y node to its +x+y node.
+	private static final int ANTI_DIAGONAL_CROSSING = 2;	// From a corner point's +x-y node to its -x+y node.
+	private static final int DETOUR_HOPS = 3;	// Abstract nodes a detour may skip.
+
+	private static class Cluster {
+		private int minX, minY, maxX, maxY;
+		private int[] entrances = new int[0];	// Node indices on the border of the cluster.
+		private int[] partners = new int[0];	// For each entrance, the node across the border.
+		private int[] distances = new int[0];	// entrances.length ^ 2 costs inside the cluster.
+	}
+
+	private Pathfinding pathfinding;
+	private Grid grid;
+	private int clusterSize;
+	private int clustersX;
+	private int clustersY;
+	private Cluster[] clusters;
+	private int[][] xBorders;	// Entrance (y offset, y shift across) pairs between a cluster and the one to its +x.
+	private int[][] yBorders;	// Entrance (x offset, x shift across) pairs between a cluster and the one to its +y.
+	private int[] corners;	// Crossings through the corner a cluster shares with the ones to its +x, +y and +x+y.
+	private Set<Integer> dirtyClusters;
+	private boolean built;
+
+	public HierarchicalPathfinding(Pathfinding pathfinding) {
+		this(pathfinding, DEFAULT_CLUSTER_SIZE);
+	}
+
+	public HierarchicalPathfinding(Pathfinding pathfinding, int clusterSize) {
+		this.pathfinding = pathfinding;
+		this.grid = pathfinding.getGrid();
+		this.clusterSize = clusterSize;
+		clustersX = (grid.getGridSizeX() + clusterSize - 1) / clusterSize;
+		clustersY = (grid.getGridSizeY() + clusterSize - 1) / clusterSize;
+		clusters = new Cluster[clustersX * clustersY];
+		for(int cy = 0; cy < clustersY; cy++) {
+			for(int cx = 0; cx < clustersX; cx++) {
+				Cluster cluster = new Cluster();
+				cluster.minX = cx * clusterSize;
+				cluster.minY = cy * clusterSize;
+				cluster.maxX = Math.min(grid.getGridSizeX(), (cx + 1) * clusterSize) - 1;
+				cluster.maxY = Math.min(grid.getGridSizeY(), (cy + 1) * clusterSize) - 1;
+				clusters[cy * clustersX + cx] = cluster;
+			}
+		}
+		xBorders = new int[clusters.length][0];
+		yBorders = new int[clusters.length][0];
+		corners = new int[clusters.length];
+		dirtyClusters = new HashSet<Integer>();
+	}
+
+	/**
+	 * Must be called after a node's walkability changes.
+	 * @param node index of the node.
+	 */
+	public void onWalkableChanged(int node) {
+		dirtyClusters.add(getCluster(node));
+	}
+
+	/**
+	 * Finds a path between 2 nodes through the abstract graph.
+	 * @param sourceWorldPosition
+	 * @param targetWorldPosition
+	 * @return near shortest path without the source node or null if there is none.
+	 */
+	public Path FindPath(Coordinates sourceWorldPosition, Coordinates targetWorldPosition) {
+		update();
+
+		int sourceNode = grid.getIndex(sourceWorldPosition.getX(), sourceWorldPosition.getY());
+		int targetNode = grid.getIndex(targetWorldPosition.getX(), targetWorldPosition.getY());
+		if(sourceNode == targetNode)
+			return new Path(new int[0]);
+		if(!grid.isWalkable(targetNode))
+			return null;
+
+		SearchState state = SearchState.forCurrentThread(grid.getMaxSize());
+		Cluster sourceCluster = clusters[getCluster(sourceNode)];
+		Cluster targetCluster = clusters[getCluster(targetNode)];
+
+		// Connects the source and target to the entrances of their clusters.
+		explore(sourceNode, sourceCluster, state);
+		int[] sourceCosts = readCosts(sourceCluster, state);
+		int directCost = sourceCluster == targetCluster && state.isClosed(targetNode) ? state.getGCost(targetNode) : INFINITY;
+		explore(targetNode, targetCluster, state);
+		int[] targetCosts = readCosts(targetCluster, state);
+		// Walled in source or target, no need to search the whole abstract graph.
+		if(directCost >= INFINITY && (isUnreachable(sourceCosts) || isUnreachable(targetCosts)))
+			return null;
+
+		List<Integer> abstractPath = findAbstractPath(sourceNode, targetNode, sourceCluster, targetCluster,
+				sourceCosts, targetCosts, directCost, state);
+		if(abstractPath == null)
+			return null;
+		return refine(abstractPath, state);
+	}
+
+	/**
+	 * A* over the entrances, with the source and target inserted as extra nodes.
+	 * @return the abstract nodes from source to target or null.
+	 */
+	private List<Integer> findAbstractPath(int sourceNode, int targetNode, Cluster sourceCluster,
+			Cluster targetCluster, int[] sourceCosts, int[] targetCosts, int directCost, SearchState state) {
+		state.begin();
+		state.open(sourceNode, 0, grid.getDistance(sourceNode, targetNode), -1);
+
+		while(state.hasOpenNodes()) {
+			int currentNode = state.removeFirst();
+			if(currentNode == targetNode) {
+				List<Integer> path = new ArrayList<Integer>();
+				for(int node = targetNode; node >= 0; node = state.getParent(node))
+					path.add(0, node);
+				return path;
+			}
+
+			if(currentNode == sourceNode) {
+				for(int i = 0; i < sourceCluster.entrances.length; i++)
+					relax(state, currentNode, sourceCluster.entrances[i], sourceCosts[i], targetNode);
+				relax(state, currentNode, targetNode, directCost, targetNode);
+			}
+
+			Cluster cluster = clusters[getCluster(currentNode)];
+			int entrance = indexOf(cluster.entrances, currentNode);
+			if(entrance < 0)
+				continue;
+			int entranceCount = cluster.entrances.length;
+			for(int i = 0; i < entranceCount; i++)
+				relax(state, currentNode, cluster.entrances[i], cluster.distances[entrance * entranceCount + i], targetNode);
+			for(int i = 0; i < entranceCount; i++) {
+				if(cluster.entrances[i] == currentNode)
+					relax(state, currentNode, cluster.partners[i], grid.getDistance(currentNode, cluster.partners[i]), targetNode);
+			}
+			if(cluster == targetCluster)
+				relax(state, currentNode, targetNode, targetCosts[entrance], targetNode);
+		}
+		return null;
+	}
+
+	private void relax(SearchState state, int currentNode, int neighbour, int cost, int targetNode) {
+		if(cost >= INFINITY || neighbour == currentNode || state.isClosed(neighbour))
+			return;
+		int newCost = state.getGCost(currentNode) + cost;
+		if(!state.isVisited(neighbour))
+			state.open(neighbour, newCost, grid.getDistance(neighbour, targetNode), currentNode);
+		else if(newCost < state.getGCost(neighbour))
+			state.decrease(neighbour, newCost, currentNode);
+	}
+
+	/**
+	 * Turns each abstract edge into grid nodes, with a detour when agents
+	 * block it.
+	 * @return path or null if agents block every detour.
+	 */
+	private Path refine(List<Integer> abstractPath, SearchState state) {
+		Path.Builder path = new Path.Builder();
+		for(int i = 1; i < abstractPath.size(); i++) {
+			int from = abstractPath.get(i - 1);
+			int to = abstractPath.get(i);
+			if(Math.abs(grid.getX(from) - grid.getX(to)) <= 1 && Math.abs(grid.getY(from) - grid.getY(to)) <= 1) {
+				if(grid.isWalkable(to)) {
+					path.add(grid.getX(to), grid.getY(to));
+					continue;
+				}
+			} else {
+				Cluster cluster = clusters[getCluster(from)];
+				Path segment = pathfinding.FindPath(new Coordinates(grid.getX(from), grid.getY(from)),
+						new Coordinates(grid.getX(to), grid.getY(to)), state, cluster.minX, cluster.minY, cluster.maxX,
+						cluster.maxY);
+				if(segment != null) {
+					path.addAll(segment);
+					continue;
+				}
+			}
+			i = detour(abstractPath, i - 1, path, state);
+			if(i < 0)
+				return null;
+		}
+		return path.build();
+	}
+
+	/**
+	 * Goes around the agents in the way from an abstract node to one of the
+	 * next DETOUR_HOPS ones, the nearest that can be reached.
+	 * @return index of the abstract node reached, -1 if none.
+	 */
+	private int detour(List<Integer> abstractPath, int fromIndex, Path.Builder path, SearchState state) {
+		int from = abstractPath.get(fromIndex);
+		int fromX = grid.getX(from);
+		int fromY = grid.getY(from);
+		int lastIndex = Math.min(abstractPath.size() - 1, fromIndex + DETOUR_HOPS);
+		for(int index = fromIndex + 1; index <= lastIndex; index++) {
+			int to = abstractPath.get(index);
+			if(!grid.isWalkable(to))
+				continue;
+			int toX = grid.getX(to);
+			int toY = grid.getY(to);
+			Path segment = pathfinding.FindPath(new Coordinates(fromX, fromY), new Coordinates(toX, toY), state,
+					Math.max(0, Math.min(fromX, toX) - clusterSize), Math.max(0, Math.min(fromY, toY) - clusterSize),
+					Math.min(grid.getGridSizeX() - 1, Math.max(fromX, toX) + clusterSize),
+					Math.min(grid.getGridSizeY() - 1, Math.max(fromY, toY) + clusterSize));
+			if(segment != null) {
+				path.addAll(segment);
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Brings the abstract graph up to date with the grid.
+	 */
+	private void update() {
+		if(!built) {
+			for(int cluster = 0; cluster < clusters.length; cluster++)
+				dirtyClusters.add(cluster);
+			built = true;
+		}
+		if(dirtyClusters.isEmpty())
+			return;
+
+		Set<Integer> rebuild = new HashSet<Integer>(dirtyClusters);
+		for(int cluster : dirtyClusters) {
+			int cx = cluster % clustersX;
+			int cy = cluster / clustersX;
+			if(cx + 1 < clustersX && updateXBorder(cluster))
+				rebuild.add(cluster + 1);
+			if(cx > 0 && updateXBorder(cluster - 1))
+				rebuild.add(cluster - 1);
+			if(cy + 1 < clustersY && updateYBorder(cluster))
+				rebuild.add(cluster + clustersX);
+			if(cy > 0 && updateYBorder(cluster - clustersX))
+				rebuild.add(cluster - clustersX);
+			// The corner points of the cluster, each kept by the cluster at its -x-y.
+			for(int cornerY = Math.max(0, cy - 1); cornerY <= Math.min(cy, clustersY - 2); cornerY++) {
+				for(int cornerX = Math.max(0, cx - 1); cornerX <= Math.min(cx, clustersX - 2); cornerX++) {
+					int corner = cornerY * clustersX + cornerX;
+					if(updateCorner(corner)) {
+						rebuild.add(corner);
+						rebuild.add(corner + 1);
+						rebuild.add(corner + clustersX);
+						rebuild.add(corner + clustersX + 1);
+					}
+				}
+			}
+		}
+		dirtyClusters.clear();
+
+		SearchState state = SearchState.forCurrentThread(grid.getMaxSize());
+		for(int cluster : rebuild)
+			rebuildCluster(cluster, state);
+	}
+
+	/**
+	 * Recomputes the entrances between a cluster and the one to its +x.
+	 * @return true if they changed.
+	 */
+	private boolean updateXBorder(int clusterIndex) {
+		Cluster cluster = clusters[clusterIndex];
+		int[] entrances = findEntrances(cluster.maxX, cluster.minY, 0, 1, cluster.maxY - cluster.minY + 1, 1, 0);
+		boolean changed = !Arrays.equals(entrances, xBorders[clusterIndex]);
+		xBorders[clusterIndex] = entrances;
+		return changed;
+	}
+
+	/**
+	 * Recomputes the entrances between a cluster and the one to its +y.
+	 * @return true if they changed.
+	 */
+	private boolean updateYBorder(int clusterIndex) {
+		Cluster cluster = clusters[clusterIndex];
+		int[] entrances = findEntrances(cluster.minX, cluster.maxY, 1, 0, cluster.maxX - cluster.minX + 1, 0, 1);
+		boolean changed = !Arrays.equals(entrances, yBorders[clusterIndex]);
+		yBorders[clusterIndex] = entrances;
+		return changed;
+	}
+
+	/**
+	 * Recomputes the crossings through the corner a cluster shares with the
+	 * ones to its +x, +y and +x+y. A diagonal step through it is a crossing
+	 * when neither of the 2 other nodes around the corner is walkable, as
+	 * it's then the only way through; otherwise the borders lead around.
+	 * @return true if they changed.
+	 */
+	private boolean updateCorner(int clusterIndex) {
+		Cluster cluster = clusters[clusterIndex];
+		boolean inside = grid.isStaticWalkable(grid.getIndex(cluster.maxX, cluster.maxY));
+		boolean acrossX = grid.isStaticWalkable(grid.getIndex(cluster.maxX + 1, cluster.maxY));
+		boolean acrossY = grid.isStaticWalkable(grid.getIndex(cluster.maxX, cluster.maxY + 1));
+		boolean acrossXY = grid.isStaticWalkable(grid.getIndex(cluster.maxX + 1, cluster.maxY + 1));
+		int crossings = 0;
+		if(inside && acrossXY && !acrossX && !acrossY)
+			crossings |= DIAGONAL_CROSSING;
+		if(acrossX && acrossY && !inside && !acrossXY)
+			crossings |= ANTI_DIAGONAL_CROSSING;
+		boolean changed = crossings != corners[clusterIndex];
+		corners[clusterIndex] = crossings;
+		return changed;
+	}
+
+	/**
+	 * Walks along a border looking for stretches where both sides are walkable.
+	 * Narrow stretches get an entrance in the middle, wide ones one at each end.
+	 * A diagonal step across the border also gets one when neither of its
+	 * ends can cross straight, as it's then the only way through.
+	 * @return (offset along the border, shift along it when crossing) pairs.
+	 */
+	private int[] findEntrances(int x, int y, int stepX, int stepY, int length, int acrossX, int acrossY) {
+		List<Integer> entrances = new ArrayList<Integer>();
+		int start = -1;
+		for(int offset = 0; offset <= length; offset++) {
+			boolean open = offset < length && isBorderWalkable(x, y, stepX, stepY, offset, 0, 0)
+					&& isBorderWalkable(x, y, stepX, stepY, offset, acrossX, acrossY);
+			if(open && start < 0)
+				start = offset;
+			else if(!open && start >= 0) {
+				int end = offset - 1;
+				if(end - start + 1 < MAX_ENTRANCE_WIDTH)
+					addPair(entrances, (start + end) / 2, 0);
+				else {
+					addPair(entrances, start, 0);
+					addPair(entrances, end, 0);
+				}
+				start = -1;
+			}
+		}
+		for(int offset = 0; offset < length; offset++) {
+			if(!isBorderWalkable(x, y, stepX, stepY, offset, 0, 0)
+					|| isBorderWalkable(x, y, stepX, stepY, offset, acrossX, acrossY))
+				continue;
+			for(int shift = -1; shift <= 1; shift += 2) {
+				if(offset + shift >= 0 && offset + shift < length
+						&& isBorderWalkable(x, y, stepX, stepY, offset + shift, acrossX, acrossY)
+						&& !isBorderWalkable(x, y, stepX, stepY, offset + shift, 0, 0))
+					addPair(entrances, offset, shift);
+			}
+		}
+		int[] result = new int[entrances.size()];
+		for(int i = 0; i < result.length; i++)
+			result[i] = entrances.get(i);
+		return result;
+	}
+
+	private boolean isBorderWalkable(int x, int y, int stepX, int stepY, int offset, int acrossX, int acrossY) {
+		return grid.isStaticWalkable(grid.getIndex(x + offset * stepX + acrossX, y + offset * stepY + acrossY));
+	}
+
+	private void addPair(List<Integer> entrances, int offset, int shift) {
+		entrances.add(offset);
+		entrances.add(shift);
+	}
+
+	/**
+	 * Collects the entrances of a cluster from its 4 borders and computes the
+	 * costs between them.
+	 */
+	private void rebuildCluster(int clusterIndex, SearchState state) {
+		Cluster cluster = clusters[clusterIndex];
+		int cx = clusterIndex % clustersX;
+		int cy = clusterIndex / clustersX;
+		List<Integer> entrances = new ArrayList<Integer>();
+		List<Integer> partners = new ArrayList<Integer>();
+
+		if(cx + 1 < clustersX) {
+			int[] border = xBorders[clusterIndex];
+			for(int i = 0; i < border.length; i += 2)
+				addEntrance(entrances, partners, cluster.maxX, cluster.minY + border[i], 1, border[i + 1]);
+		}
+		if(cx > 0) {
+			int[] border = xBorders[clusterIndex - 1];
+			for(int i = 0; i < border.length; i += 2)
+				addEntrance(entrances, partners, cluster.minX, cluster.minY + border[i] + border[i + 1], -1, -border[i + 1]);
+		}
+		if(cy + 1 < clustersY) {
+			int[] border = yBorders[clusterIndex];
+			for(int i = 0; i < border.length; i += 2)
+				addEntrance(entrances, partners, cluster.minX + border[i], cluster.maxY, border[i + 1], 1);
+		}
+		if(cy > 0) {
+			int[] border = yBorders[clusterIndex - clustersX];
+			for(int i = 0; i < border.length; i += 2)
+				addEntrance(entrances, partners, cluster.minX + border[i] + border[i + 1], cluster.minY, -border[i + 1], -1);
+		}
+		if(cx + 1 < clustersX && cy + 1 < clustersY && (corners[clusterIndex] & DIAGONAL_CROSSING) != 0)
+			addEntrance(entrances, partners, cluster.maxX, cluster.maxY, 1, 1);
+		if(cx > 0 && cy + 1 < clustersY && (corners[clusterIndex - 1] & ANTI_DIAGONAL_CROSSING) != 0)
+			addEntrance(entrances, partners, cluster.minX, cluster.maxY, -1, 1);
+		if(cx + 1 < clustersX && cy > 0 && (corners[clusterIndex - clustersX] & ANTI_DIAGONAL_CROSSING) != 0)
+			addEntrance(entrances, partners, cluster.maxX, cluster.minY, 1, -1);
+		if(cx > 0 && cy > 0 && (corners[clusterIndex - clustersX - 1] & DIAGONAL_CROSSING) != 0)
+			addEntrance(entrances, partners, cluster.minX, cluster.minY, -1, -1);
+
+		int count = entrances.size();
+		cluster.entrances = new int[count];
+		cluster.partners = new int[count];
+		for(int i = 0; i < count; i++) {
+			cluster.entrances[i] = entrances.get(i);
+			cluster.partners[i] = partners.get(i);
+		}
+		cluster.distances = new int[count * count];
+		for(int i = 0; i < count; i++) {
+			explore(cluster.entrances[i], cluster, state);
+			int[] costs = readCosts(cluster, state);
+			System.arraycopy(costs, 0, cluster.distances, i * count, count);
+		}
+	}
+
+	private void addEntrance(List<Integer> entrances, List<Integer> partners, int x, int y, int acrossX, int acrossY) {
+		entrances.add(grid.getIndex(x, y));
+		partners.add(grid.getIndex(x + acrossX, y + acrossY));
+	}
+
+	/**
+	 * Dijkstra from a node to every node of a cluster it belongs to, going
+	 * through the nodes occupied by agents.
+	 */
+	private void explore(int startNode, Cluster cluster, SearchState state) {
+		state.begin();
+		state.open(startNode, 0, 0, -1);
+		while(state.hasOpenNodes()) {
+			int currentNode = state.removeFirst();
+			int currentX = grid.getX(currentNode);
+			int currentY = grid.getY(currentNode);
+			for(int x = Math.max(cluster.minX, currentX - 1); x <= Math.min(cluster.maxX, currentX + 1); x++) {
+				for(int y = Math.max(cluster.minY, currentY - 1); y <= Math.min(cluster.maxY, currentY + 1); y++) {
+					int neighbour = grid.getIndex(x, y);
+					if(neighbour == currentNode || !grid.isStaticWalkable(neighbour) || state.isClosed(neighbour))
+						continue;
+					int newCost = state.getGCost(currentNode) + grid.getDistance(currentNode, neighbour);
+					if(!state.isVisited(neighbour))
+						state.open(neighbour, newCost, 0, currentNode);
+					else if(newCost < state.getGCost(neighbour))
+						state.decrease(neighbour, newCost, currentNode);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the costs of the last explore() to each entrance of the cluster.
+	 */
+	private int[] readCosts(Cluster cluster, SearchState state) {
+		int[] costs = new int[cluster.entrances.length];
+		for(int i = 0; i < costs.length; i++)
+			costs[i] = state.isClosed(cluster.entrances[i]) ? state.getGCost(cluster.entrances[i]) : INFINITY;
+		return costs;
+	}
+
+	private boolean isUnreachable(int[] costs) {
+		for(int cost : costs) {
+			if(cost < INFINITY)
+				return false;
+		}
+		return true;
+	}
+
+	private int getCluster(int node) {
+		return (grid.getY(node) / clusterSize) * clustersX + grid.getX(node) / clusterSize;
+	}
+
+	private int indexOf(int[] values, int value) {
+		for(int i = 0; i < values.length; i++) {
+			if(values[i] == value)
+				return i;
+		}
+		return -1;
+	}
+}
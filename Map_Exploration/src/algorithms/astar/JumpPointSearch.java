@@ -0,0 +1,206 @@
+package algorithms.astar;
+
+import utils.Coordinates;
+
+/**
+ * Jump Point Search over the same 8-connected, 10/14 cost grid used by
+ * Pathfinding. Symmetric paths are pruned by jumping in straight lines
+ * until a node with a forced neighbour is found, so only jump points
+ * enter the open set. The returned path contains every intermediate
+ * node, just like Pathfinding.FindPath.
+ */
+public class JumpPointSearch {
+
+	private Grid grid;
+	
+	public JumpPointSearch(Grid grid) {
+		this.grid = grid;
+	}
+	
+	public Path FindPath(Coordinates sourceWorldPosition, Coordinates targetWorldPosition) {
+		return FindPath(sourceWorldPosition, targetWorldPosition, SearchState.forCurrentThread(grid.getMaxSize()));
+	}
+	
+	/**
+	 * Finds the shortest path between 2 nodes using Jump Point Search.
+	 * @param sourceWorldPosition
+	 * @param targetWorldPosition
+	 * @param state search state to write to, at least as big as the grid.
+	 * @return shortest path between 2 nodes.
+	 */
+	public Path FindPath(Coordinates sourceWorldPosition, Coordinates targetWorldPosition, SearchState state) {
+		int sourceNode = grid.getIndex(sourceWorldPosition.getX(), sourceWorldPosition.getY());
+		int targetNode = grid.getIndex(targetWorldPosition.getX(), targetWorldPosition.getY());
+		int[] neighbours = new int[16];	// Pairs of (x, y).
+		
+		state.begin();
+		state.open(sourceNode, 0, grid.getDistance(sourceNode, targetNode), -1);
+		
+		while(state.hasOpenNodes()) {
+			int currentNode = state.removeFirst();
+			
+			// Path has been found.
+			if(currentNode == targetNode)
+				return ReversePath(state, sourceNode, targetNode);
+			
+			int neighbourCount = findNeighbours(state, currentNode, neighbours);
+			for(int i = 0; i < neighbourCount; i++) {
+				int jumpPoint = jump(neighbours[i * 2], neighbours[i * 2 + 1], grid.getX(currentNode),
+						grid.getY(currentNode), targetNode);
+				if(jumpPoint < 0 || state.isClosed(jumpPoint))
+					continue;
+				
+				int newCostToJumpPoint = state.getGCost(currentNode) + grid.getDistance(currentNode, jumpPoint);
+				if(!state.isVisited(jumpPoint))
+					state.open(jumpPoint, newCostToJumpPoint, grid.getDistance(jumpPoint, targetNode), currentNode);
+				else if(newCostToJumpPoint < state.getGCost(jumpPoint))
+					state.decrease(jumpPoint, newCostToJumpPoint, currentNode);
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Writes the neighbours worth exploring into 'neighbours' based on the
+	 * direction the node was reached from.
+	 * @return amount of neighbours written.
+	 */
+	private int findNeighbours(SearchState state, int node, int[] neighbours) {
+		int x = grid.getX(node);
+		int y = grid.getY(node);
+		int count = 0;
+		
+		int parent = state.getParent(node);
+		if(parent < 0) {
+			for(int dx = -1; dx <= 1; dx++) {
+				for(int dy = -1; dy <= 1; dy++) {
+					if((dx != 0 || dy != 0) && isWalkable(x + dx, y + dy))
+						count = add(neighbours, count, x + dx, y + dy);
+				}
+			}
+			return count;
+		}
+		
+		int dx = Integer.signum(x - grid.getX(parent));
+		int dy = Integer.signum(y - grid.getY(parent));
+		if(dx != 0 && dy != 0) {
+			if(isWalkable(x, y + dy))
+				count = add(neighbours, count, x, y + dy);
+			if(isWalkable(x + dx, y))
+				count = add(neighbours, count, x + dx, y);
+			if(isWalkable(x + dx, y + dy))
+				count = add(neighbours, count, x + dx, y + dy);
+			if(!isWalkable(x - dx, y))
+				count = add(neighbours, count, x - dx, y + dy);
+			if(!isWalkable(x, y - dy))
+				count = add(neighbours, count, x + dx, y - dy);
+		} else if(dx != 0) {
+			if(isWalkable(x + dx, y))
+				count = add(neighbours, count, x + dx, y);
+			if(!isWalkable(x, y + 1))
+				count = add(neighbours, count, x + dx, y + 1);
+			if(!isWalkable(x, y - 1))
+				count = add(neighbours, count, x + dx, y - 1);
+		} else {
+			if(isWalkable(x, y + dy))
+				count = add(neighbours, count, x, y + dy);
+			if(!isWalkable(x + 1, y))
+				count = add(neighbours, count, x + 1, y + dy);
+			if(!isWalkable(x - 1, y))
+				count = add(neighbours, count, x - 1, y + dy);
+		}
+		return count;
+	}
+	
+	private int add(int[] neighbours, int count, int x, int y) {
+		neighbours[count * 2] = x;
+		neighbours[count * 2 + 1] = y;
+		return count + 1;
+	}
+	
+	/**
+	 * Walks from (x, y) away from (parentX, parentY) until reaching the
+	 * target, a node with a forced neighbour or a blocked node.
+	 * @return index of the jump point or -1 if there is none.
+	 */
+	private int jump(int x, int y, int parentX, int parentY, int targetNode) {
+		int dx = x - parentX;
+		int dy = y - parentY;
+		
+		while(isWalkable(x, y)) {
+			int node = grid.getIndex(x, y);
+			if(node == targetNode)
+				return node;
+			
+			if(dx != 0 && dy != 0) {
+				if((isWalkable(x - dx, y + dy) && !isWalkable(x - dx, y))
+						|| (isWalkable(x + dx, y - dy) && !isWalkable(x, y - dy)))
+					return node;
+				// Diagonal moves must also look for jump points horizontally and vertically.
+				if(jump(x + dx, y, x, y, targetNode) >= 0 || jump(x, y + dy, x, y, targetNode) >= 0)
+					return node;
+			} else if(dx != 0) {
+				if((isWalkable(x + dx, y + 1) && !isWalkable(x, y + 1))
+						|| (isWalkable(x + dx, y - 1) && !isWalkable(x, y - 1)))
+					return node;
+			} else {
+				if((isWalkable(x + 1, y + dy) && !isWalkable(x + 1, y))
+						|| (isWalkable(x - 1, y + dy) && !isWalkable(x - 1, y)))
+					return node;
+			}
+			
+			x += dx;
+			y += dy;
+		}
+		return -1;
+	}
+	
+	private boolean isWalkable(int x, int y) {
+		return grid.isInside(x, y) && grid.isWalkable(grid.getIndex(x, y));
+	}
+	
+	/**
+	 * Rebuilds the path from the jump points, filling in the nodes
+	 * between each pair of them.
+	 * @param state
+	 * @param startNode
+	 * @param endNode
+	 * @return traversal path.
+	 */
+	private Path ReversePath(SearchState state, int startNode, int endNode) {
+		int jumpPointCount = 0;
+		for(int currentNode = endNode; currentNode != startNode; currentNode = state.getParent(currentNode))
+			jumpPointCount++;
+		int[] jumpPoints = new int[jumpPointCount];
+		for(int currentNode = endNode; currentNode != startNode; currentNode = state.getParent(currentNode))
+			jumpPoints[--jumpPointCount] = currentNode;
+		
+		// Jumps are straight or diagonal, so each one takes the longest of its sides in steps.
+		int length = 0;
+		int x = grid.getX(startNode);
+		int y = grid.getY(startNode);
+		for(int jumpPoint : jumpPoints) {
+			length += Math.max(Math.abs(grid.getX(jumpPoint) - x), Math.abs(grid.getY(jumpPoint) - y));
+			x = grid.getX(jumpPoint);
+			y = grid.getY(jumpPoint);
+		}
+		
+		int[] positions = new int[length];
+		int i = 0;
+		x = grid.getX(startNode);
+		y = grid.getY(startNode);
+		for(int jumpPoint : jumpPoints) {
+			int jumpX = grid.getX(jumpPoint);
+			int jumpY = grid.getY(jumpPoint);
+			int dx = Integer.signum(jumpX - x);
+			int dy = Integer.signum(jumpY - y);
+			while(x != jumpX || y != jumpY) {
+				x += dx;
+				y += dy;
+				positions[i++] = Path.pack(x, y);
+			}
+		}
+		return new Path(positions);
+	}
+}
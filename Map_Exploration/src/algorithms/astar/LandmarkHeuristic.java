@@ -0,0 +1,105 @@
+package algorithms.astar;
+
+/**
+ * ALT heuristic (A*, landmarks and triangle inequality, Goldberg and
+ * Harrelson). The costs from a few landmark nodes to every node are kept in
+ * DistanceFields, and for any landmark L the cost between 2 nodes is at
+ * least |cost(L, node) - cost(L, target)|. On mazes this is far closer to
+ * the real cost than the octile distance, so A* expands fewer nodes.
+ * The fields are built on the grid the estimates are for, usually an
+ * agent's own overlay, and only hold its static obstacles: neither the
+ * obstacles found by the rest of the team nor other agents in the way make
+ * the estimates exceed the real cost. They must be repaired whenever the
+ * grid's walkability changes, see onWalkableChanged().
+ */
+public class LandmarkHeuristic implements Heuristic {
+
+	public static final int DEFAULT_LANDMARK_COUNT = 4;
+
+	private Grid grid;
+	private DistanceField[] fields;	// One per landmark.
+
+	/**
+	 * Picks the landmarks on the walkable nodes of the grid, each one as far
+	 * as possible from the ones before (farthest point selection), and
+	 * computes their fields.
+	 * @param grid
+	 * @param landmarkCount
+	 */
+	public LandmarkHeuristic(Grid grid, int landmarkCount) {
+		this.grid = grid;
+		fields = new DistanceField[0];
+
+		int landmark = findFarthestNode(firstWalkableNode());
+		while(landmark >= 0 && fields.length < landmarkCount) {
+			DistanceField[] newFields = new DistanceField[fields.length + 1];
+			System.arraycopy(fields, 0, newFields, 0, fields.length);
+			newFields[fields.length] = new DistanceField(grid, landmark);
+			fields = newFields;
+			landmark = findFarthestNode(-1);
+		}
+	}
+
+	public int getLandmarkCount() {
+		return fields.length;
+	}
+
+	public int getLandmark(int index) {
+		return fields[index].getRoot();
+	}
+
+	@Override
+	public int estimate(int node, int targetNode) {
+		int best = grid.getDistance(node, targetNode);
+		for(DistanceField field : fields) {
+			int nodeDistance = field.getDistance(node);
+			int targetDistance = field.getDistance(targetNode);
+			if(nodeDistance >= DistanceField.INFINITY || targetDistance >= DistanceField.INFINITY)
+				continue;
+			int estimate = Math.abs(nodeDistance - targetDistance);
+			if(estimate > best)
+				best = estimate;
+		}
+		return best;
+	}
+
+	/**
+	 * Must be called after a node's walkability changes in the grid.
+	 * @param node index of the node.
+	 */
+	public void onWalkableChanged(int node) {
+		for(DistanceField field : fields)
+			field.onWalkableChanged(node);
+	}
+
+	private int firstWalkableNode() {
+		for(int node = 0; node < grid.getMaxSize(); node++) {
+			if(grid.isStaticWalkable(node))
+				return node;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the reachable node farthest from the landmarks picked so far,
+	 * or from the given node if there are none yet.
+	 * @return node index or -1 if there is no new node to pick.
+	 */
+	private int findFarthestNode(int fromNode) {
+		if(fromNode < 0 && fields.length == 0)
+			return -1;
+		DistanceField from = fromNode >= 0 ? new DistanceField(grid, fromNode) : null;
+		int farthestNode = -1;
+		int farthestDistance = 0;
+		for(int node = 0; node < grid.getMaxSize(); node++) {
+			int distance = from != null ? from.getDistance(node) : DistanceField.INFINITY;
+			for(DistanceField field : fields)
+				distance = Math.min(distance, field.getDistance(node));
+			if(distance < DistanceField.INFINITY && distance > farthestDistance) {
+				farthestDistance = distance;
+				farthestNode = node;
+			}
+		}
+		return farthestNode;
+	}
+}
@@ -0,0 +1,82 @@
+package algorithms.astar;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Nodes occupied by agents in the current tick, shared by all the agents of
+ * a world. The occupied nodes are read once per tick into a bit set that
+ * never changes afterwards, grids only keep a reference to it (see
+ * Grid.setOccupied()). Transient occupancy never touches the static layer.
+ */
+public class OccupancyLayer {
+
+	private static final Map<Object, OccupancyLayer> layers = new WeakHashMap<Object, OccupancyLayer>();
+
+	private int gridSizeX;
+	private int gridSizeY;
+	private long tick = Long.MIN_VALUE;	// Tick the occupied nodes were read in.
+	private long[] occupied;
+
+	public OccupancyLayer(int gridSizeX, int gridSizeY) {
+		this.gridSizeX = gridSizeX;
+		this.gridSizeY = gridSizeY;
+	}
+
+	/**
+	 * Returns the layer of a world, creating it the first time.
+	 * @param world the agents' grid, used as key.
+	 * @param gridSizeX
+	 * @param gridSizeY
+	 * @return layer shared by all the agents of the world.
+	 */
+	public static synchronized OccupancyLayer forWorld(Object world, int gridSizeX, int gridSizeY) {
+		OccupancyLayer layer = layers.get(world);
+		if(layer == null) {
+			layer = new OccupancyLayer(gridSizeX, gridSizeY);
+			layers.put(world, layer);
+		}
+		return layer;
+	}
+
+	/**
+	 * Returns true if the occupied nodes were already read in this tick.
+	 */
+	public synchronized boolean isUpToDate(long tick) {
+		return this.tick == tick && occupied != null;
+	}
+
+	/**
+	 * Replaces the occupied nodes. The array is kept as is and must not be
+	 * changed afterwards.
+	 * @param tick
+	 * @param occupied bit set indexed like Grid.getIndex().
+	 */
+	public synchronized void update(long tick, long[] occupied) {
+		this.tick = tick;
+		this.occupied = occupied;
+	}
+
+	/**
+	 * Returns the occupied nodes of the last update, or null if there was
+	 * none.
+	 */
+	public synchronized long[] getOccupied() {
+		return occupied;
+	}
+
+	/**
+	 * Returns an empty bit set sized for this layer's grid.
+	 */
+	public long[] createBitSet() {
+		return new long[((gridSizeX * gridSizeY - 1) >>> 6) + 1];
+	}
+
+	public static boolean isSet(long[] bits, int index) {
+		return (bits[index >>> 6] & (1L << index)) != 0;
+	}
+
+	public static void set(long[] bits, int index) {
+		bits[index >>> 6] |= 1L << index;
+	}
+}
@@ -0,0 +1,109 @@
+package algorithms.astar;
+
+import java.util.Arrays;
+
+import utils.Coordinates;
+
+/**
+ * Path returned by the planners, without its source node. Every world
+ * position is packed in one int (x in the high 16 bits, y in the low ones),
+ * so a path is a single array and Coordinates are only created when asked
+ * for. Paths never change; the rest of a path from one of its nodes shares
+ * the same array (see from()).
+ */
+public class Path {
+
+	private final int[] positions;
+	private final int offset;	// Index in positions of the first node.
+
+	public Path(int[] positions) {
+		this(positions, 0);
+	}
+
+	private Path(int[] positions, int offset) {
+		this.positions = positions;
+		this.offset = offset;
+	}
+
+	/**
+	 * Collects the positions of a path in order, from the first node after
+	 * the source.
+	 */
+	public static class Builder {
+
+		private int[] positions = new int[16];
+		private int size;
+
+		public Builder add(int x, int y) {
+			if(size == positions.length)
+				positions = Arrays.copyOf(positions, size * 2);
+			positions[size++] = pack(x, y);
+			return this;
+		}
+
+		public Builder addAll(Path path) {
+			if(size + path.size() > positions.length)
+				positions = Arrays.copyOf(positions, Math.max(size * 2, size + path.size()));
+			System.arraycopy(path.positions, path.offset, positions, size, path.size());
+			size += path.size();
+			return this;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public Path build() {
+			return new Path(Arrays.copyOf(positions, size));
+		}
+	}
+
+	public static int pack(int x, int y) {
+		return x << 16 | y;
+	}
+
+	public int size() {
+		return positions.length - offset;
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	public int getX(int index) {
+		return positions[offset + index] >>> 16;
+	}
+
+	public int getY(int index) {
+		return positions[offset + index] & 0xFFFF;
+	}
+
+	/**
+	 * Returns true if the node at the index is in the given world position.
+	 */
+	public boolean isAt(int index, Coordinates worldPosition) {
+		return positions[offset + index] == pack(worldPosition.getX(), worldPosition.getY());
+	}
+
+	/**
+	 * Returns the world position of a node. A new Coordinates is created on
+	 * every call.
+	 */
+	public Coordinates get(int index) {
+		return new Coordinates(getX(index), getY(index));
+	}
+
+	/**
+	 * Returns the rest of the path from a node, that node included.
+	 */
+	public Path from(int index) {
+		return new Path(positions, offset + index);
+	}
+
+	/**
+	 * Returns this path followed by another one.
+	 */
+	public Path concat(Path other) {
+		return new Builder().addAll(this).addAll(other).build();
+	}
+}
@@ -0,0 +1,113 @@
+package algorithms.astar;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the last path computed towards each of the most recent targets.
+ * Entries are tagged with the walkability version they were computed for,
+ * so any change to the static obstacles invalidates them. Occupied nodes
+ * change every tick and don't, instead a path is only returned while its
+ * first step isn't occupied. A query from a node further along a cached
+ * path returns the remaining suffix without searching.
+ */
+public class PathCache {
+
+	private static final int DEFAULT_CAPACITY = 8;
+
+	private static class Entry {
+		private int version;
+		private int sourceNode;
+		private Path path;
+		private int lastStep;	// Index in path of the last source that hit this entry, or -1.
+	}
+
+	private Grid grid;
+	private Map<Integer, Entry> entries;	// Keyed by target index, least recently used first.
+	private int hits;
+	private int misses;
+
+	public PathCache(Grid grid) {
+		this(grid, DEFAULT_CAPACITY);
+	}
+
+	public PathCache(Grid grid, final int capacity) {
+		this.grid = grid;
+		entries = new LinkedHashMap<Integer, Entry>(capacity * 2, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cached path from source to target if it was computed for
+	 * the given walkability version and its next node is walkable.
+	 * @return remaining path or null if nothing valid is cached.
+	 */
+	public Path get(int sourceNode, int targetNode, int version) {
+		Entry entry = entries.get(targetNode);
+		if(entry != null && entry.version == version) {
+			int step = findStep(entry, sourceNode);
+			if(step != Integer.MIN_VALUE && (step + 1 == entry.path.size()
+					|| grid.isWalkable(getIndex(entry.path, step + 1)))) {
+				hits++;
+				if(step >= 0)
+					entry.lastStep = step;
+				return entry.path.from(step + 1);
+			}
+		}
+		misses++;
+		return null;
+	}
+
+	/**
+	 * Stores a path. Null paths (unreachable targets) aren't cached.
+	 */
+	public void put(int sourceNode, int targetNode, int version, Path path) {
+		if(path == null)
+			return;
+		Entry entry = new Entry();
+		entry.version = version;
+		entry.sourceNode = sourceNode;
+		entry.path = path;
+		entry.lastStep = -1;
+		entries.put(targetNode, entry);
+	}
+
+	public void clear() {
+		entries.clear();
+	}
+
+	public int getHits() {
+		return hits;
+	}
+
+	public int getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Finds where the source is on the cached path. Only the original source
+	 * and the steps around the last hit are checked, which covers an agent
+	 * walking the path one node per tick.
+	 * @return -1 for the original source, the index of the source in the
+	 *         path, or Integer.MIN_VALUE if it wasn't found.
+	 */
+	private int findStep(Entry entry, int sourceNode) {
+		if(entry.sourceNode == sourceNode)
+			return -1;
+		for(int step = entry.lastStep; step <= entry.lastStep + 1; step++) {
+			if(step >= 0 && step < entry.path.size() && getIndex(entry.path, step) == sourceNode)
+				return step;
+		}
+		return Integer.MIN_VALUE;
+	}
+
+	private int getIndex(Path path, int step) {
+		return grid.getIndex(path.getX(step), path.getY(step));
+	}
+}
@@ -0,0 +1,219 @@
+package algorithms.astar;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import utils.Coordinates;
+
+/**
+ * Keeps a path between ticks instead of planning a new one every tick.
+ * Only the next few nodes of the path are checked against walkability.
+ * When one of them is blocked a short detour to the first free node after
+ * it is searched around the agent and spliced into the path. The whole
+ * path is only planned again when no detour is found or the agent left
+ * the path.
+ */
+public class PathFollower {
+
+	public static final int DEFAULT_LOOKAHEAD = 4;
+
+	private AStar astar;
+	private int lookahead;	// Nodes checked ahead of the agent every tick.
+	private Path path;
+	private int pathNode;	// Index of the next node to move to.
+	private Coordinates source;	// Position the path starts from.
+	private Future<Path> pendingPath;	// Plan submitted to the PathService.
+	private Coordinates pendingSource;	// Position the pending plan starts from.
+	private Coordinates target;
+	private int repairCount;
+	private int replanCount;
+
+	public PathFollower(AStar astar) {
+		this(astar, DEFAULT_LOOKAHEAD);
+	}
+
+	public PathFollower(AStar astar, int lookahead) {
+		this.astar = astar;
+		this.lookahead = lookahead;
+	}
+
+	/**
+	 * Plans a path and starts following it.
+	 * @param sourceWorldPosition
+	 * @param targetWorldPosition
+	 * @return false if there is no path.
+	 */
+	public boolean follow(Coordinates sourceWorldPosition, Coordinates targetWorldPosition) {
+		follow(sourceWorldPosition, astar.computePath(sourceWorldPosition, targetWorldPosition));
+		target = targetWorldPosition;
+		return path != null;
+	}
+
+	/**
+	 * Starts following an already computed path.
+	 * @param sourceWorldPosition
+	 * @param path path without the source node, as returned by AStar, or null.
+	 */
+	public void follow(Coordinates sourceWorldPosition, Path path) {
+		cancelPendingPath();
+		this.path = path;
+		pathNode = 0;
+		source = sourceWorldPosition;
+		target = path != null && path.size() > 0 ? path.get(path.size() - 1) : null;
+	}
+
+	public void clear() {
+		cancelPendingPath();
+		path = null;
+		target = null;
+	}
+
+	public boolean hasPath() {
+		return path != null;
+	}
+
+	public Coordinates getTarget() {
+		return target;
+	}
+
+	public int getRemainingSteps() {
+		return path == null ? 0 : path.size() - pathNode;
+	}
+
+	public boolean isTargetReached(Coordinates currentPosition) {
+		return target != null && target.equals(currentPosition);
+	}
+
+	public int getRepairCount() {
+		return repairCount;
+	}
+
+	public int getReplanCount() {
+		return replanCount;
+	}
+
+	/**
+	 * Returns the next position to move to, repairing the path first if one
+	 * of the next nodes was blocked since last tick.
+	 * @param currentPosition world position of the agent.
+	 * @return next position or null if the target was reached or can't be
+	 *         reached anymore.
+	 */
+	public Coordinates getNextStep(Coordinates currentPosition) {
+		if(path == null)
+			return null;
+		collectPendingPath(currentPosition);
+		if(path == null)
+			return null;
+
+		// Skip the nodes the agent already went through.
+		int lastNode = Math.min(path.size(), pathNode + lookahead);
+		for(int i = pathNode; i < lastNode; i++) {
+			if(path.isAt(i, currentPosition)) {
+				pathNode = i + 1;
+				break;
+			}
+		}
+		if(pathNode == path.size())
+			return null;
+
+		if(pathNode == 0 ? !source.equals(currentPosition) : !path.isAt(pathNode - 1, currentPosition)) {
+			// Agent isn't on the path anymore.
+			if(!replan(currentPosition))
+				return null;
+		} else {
+			int blockedNode = getFirstBlocked(pathNode, Math.min(path.size(), pathNode + lookahead));
+			if(blockedNode >= 0 && !repair(currentPosition, blockedNode)) {
+				if(blockedNode > pathNode) {
+					// Next step is still free, the new path is planned from
+					// there while the agent moves.
+					if(pendingPath == null) {
+						pendingSource = path.get(pathNode);
+						pendingPath = astar.computePathAsync(pendingSource, target);
+					}
+				} else if(!replan(currentPosition))
+					return null;
+			}
+		}
+		return pathNode < path.size() ? path.get(pathNode) : null;
+	}
+
+	private int getFirstBlocked(int fromNode, int toNode) {
+		for(int i = fromNode; i < toNode; i++) {
+			if(!astar.isWalkable(path.getX(i), path.getY(i)))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Searches a detour, close to the agent, from the current position to the
+	 * first walkable node after the blocked one that can be reached.
+	 * @return false if there is no such detour.
+	 */
+	private boolean repair(Coordinates currentPosition, int blockedNode) {
+		int lastNode = Math.min(path.size(), blockedNode + 1 + lookahead);
+		for(int rejoinNode = blockedNode + 1; rejoinNode < lastNode; rejoinNode++) {
+			if(!astar.isWalkable(path.getX(rejoinNode), path.getY(rejoinNode)))
+				continue;
+
+			Path detour = astar.computeLocalPath(currentPosition, path.get(rejoinNode), lookahead);
+			if(detour == null)
+				continue;
+
+			path = detour.concat(path.from(rejoinNode + 1));
+			pathNode = 0;
+			source = currentPosition;
+			repairCount++;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Takes the path submitted on the last tick if it's done and the agent
+	 * is where it starts from. Until it's done the current path is kept,
+	 * and it's dropped once the agent moved on. If the search failed the
+	 * path is planned again here.
+	 */
+	private void collectPendingPath(Coordinates currentPosition) {
+		if(pendingPath == null)
+			return;
+		if(!pendingSource.equals(currentPosition)) {
+			cancelPendingPath();
+			return;
+		}
+		if(!pendingPath.isDone())
+			return;
+
+		Future<Path> donePath = pendingPath;
+		pendingPath = null;
+		try {
+			Path newPath = donePath.get();
+			replanCount++;
+			path = newPath;
+			pathNode = 0;
+			source = currentPosition;
+		} catch (ExecutionException e) {
+			replan(currentPosition);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void cancelPendingPath() {
+		if(pendingPath != null) {
+			pendingPath.cancel(false);
+			pendingPath = null;
+		}
+	}
+
+	private boolean replan(Coordinates currentPosition) {
+		cancelPendingPath();
+		replanCount++;
+		path = astar.computePath(currentPosition, target);
+		pathNode = 0;
+		source = currentPosition;
+		return path != null;
+	}
+}
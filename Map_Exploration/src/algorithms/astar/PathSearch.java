@@ -0,0 +1,192 @@
+package algorithms.astar;
+
+import utils.Coordinates;
+
+/**
+ * A* search that is run a limited number of expansions at a time, so a
+ * search that would expand the whole map (unreachable target, huge map) is
+ * spread over several ticks instead of blocking one.
+ * While it isn't over the agent can move towards the expanded node closest
+ * to the target, going back along the search tree when that node changes
+ * to another branch (Time-Bounded A*, Bjornsson et al.).
+ * The search keeps its own SearchState until release() is called.
+ */
+public class PathSearch {
+
+	private Grid grid;
+	private SearchState state;
+	private int sourceNode;
+	private int targetNode;
+	private int bestNode;	// Expanded node with the lowest h cost.
+	private boolean finished;
+	private boolean found;
+	private int[] currentPath;	// Nodes from the source to the best node or the target.
+	private String metricsKey;	// Key of the resumes in PathfindingMetrics, or null.
+
+	PathSearch(Grid grid, Coordinates sourceWorldPosition, Coordinates targetWorldPosition) {
+		this.grid = grid;
+		sourceNode = grid.getIndex(sourceWorldPosition.getX(), sourceWorldPosition.getY());
+		targetNode = grid.getIndex(targetWorldPosition.getX(), targetWorldPosition.getY());
+		bestNode = sourceNode;
+		state = SearchState.acquire(grid.getMaxSize());
+		state.begin();
+		state.open(sourceNode, 0, grid.getDistance(sourceNode, targetNode), -1);
+	}
+
+	/**
+	 * Continues the search.
+	 * @param budget maximum number of nodes to expand in this call.
+	 * @return true if the search is over.
+	 */
+	public boolean resume(int budget) {
+		if(finished)
+			return true;
+		long startNanos = System.nanoTime();
+		long startExpandedCount = state.getTotalExpandedCount();
+		long startHeapOperationCount = state.getTotalHeapOperationCount();
+		for(int expanded = 0; expanded < budget && !finished; expanded++) {
+			if(!state.hasOpenNodes()) {
+				finished = true;
+				break;
+			}
+
+			int currentNode = state.removeFirst();
+			if(state.getHCost(currentNode) < state.getHCost(bestNode)) {
+				bestNode = currentNode;
+				currentPath = null;
+			}
+
+			// Path has been found.
+			if(currentNode == targetNode) {
+				finished = true;
+				found = true;
+				break;
+			}
+
+			int currentX = grid.getX(currentNode);
+			int currentY = grid.getY(currentNode);
+			for(int x = -1; x <= 1; x++) {
+				for(int y = -1; y <= 1; y++) {
+					if(x == 0 && y == 0)
+						continue;
+
+					int checkX = currentX + x;
+					int checkY = currentY + y;
+					if(!grid.isInside(checkX, checkY))
+						continue;
+
+					int neighbour = grid.getIndex(checkX, checkY);
+					if(!grid.isWalkable(neighbour) || state.isClosed(neighbour))
+						continue;
+
+					int newCostToNeighbour = state.getGCost(currentNode) + (x != 0 && y != 0 ? 14 : 10);
+					if(!state.isVisited(neighbour))
+						state.open(neighbour, newCostToNeighbour, grid.getDistance(neighbour, targetNode), currentNode);
+					else if(newCostToNeighbour < state.getGCost(neighbour))
+						state.decrease(neighbour, newCostToNeighbour, currentNode);
+				}
+			}
+		}
+		if(metricsKey != null) {
+			PathfindingMetrics.record(metricsKey, state.getTotalExpandedCount() - startExpandedCount,
+					state.getTotalHeapOperationCount() - startHeapOperationCount, found ? getCurrentPath().length - 1 : 0,
+					!finished || found, System.nanoTime() - startNanos);
+		}
+		return finished;
+	}
+
+	/**
+	 * Records every resume in PathfindingMetrics under the given key.
+	 */
+	void setMetricsKey(String metricsKey) {
+		this.metricsKey = metricsKey;
+	}
+
+	public boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * @return true if the search is over and reached the target.
+	 */
+	public boolean isFound() {
+		return found;
+	}
+
+	public int getExpandedCount() {
+		return state.getExpandedCount();
+	}
+
+	/**
+	 * Returns the best effort step: along the path to the target if it was
+	 * found, or else to the expanded node closest to it. An agent off that
+	 * path is sent back towards the source along the search tree.
+	 * @param currentWorldPosition position reached by following the steps
+	 *            given by this search.
+	 * @return next position, or the current one if there is nowhere better
+	 *         to go for now.
+	 */
+	public Coordinates getNextStep(Coordinates currentWorldPosition) {
+		int currentNode = grid.getIndex(currentWorldPosition.getX(), currentWorldPosition.getY());
+		int[] path = getCurrentPath();
+		for(int i = 0; i < path.length; i++) {
+			if(path[i] == currentNode)
+				return i + 1 < path.length ? toWorldPosition(path[i + 1]) : currentWorldPosition;
+		}
+
+		if(state.isVisited(currentNode) && state.getParent(currentNode) >= 0)
+			return toWorldPosition(state.getParent(currentNode));
+		return currentWorldPosition;
+	}
+
+	/**
+	 * Returns the rest of the found path from a position on it.
+	 * @param currentWorldPosition
+	 * @return path without the current node or null if the target wasn't
+	 *         found or the position isn't on its path.
+	 */
+	public Path getPathFrom(Coordinates currentWorldPosition) {
+		if(!found)
+			return null;
+
+		int currentNode = grid.getIndex(currentWorldPosition.getX(), currentWorldPosition.getY());
+		int[] path = getCurrentPath();
+		for(int i = 0; i < path.length; i++) {
+			if(path[i] == currentNode) {
+				int[] rest = new int[path.length - i - 1];
+				for(int j = i + 1; j < path.length; j++)
+					rest[j - i - 1] = Path.pack(grid.getX(path[j]), grid.getY(path[j]));
+				return new Path(rest);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gives the search state back. The search can't be used anymore.
+	 */
+	public void release() {
+		if(state != null) {
+			SearchState.release(state);
+			state = null;
+			finished = true;
+		}
+	}
+
+	private int[] getCurrentPath() {
+		if(currentPath == null) {
+			int endNode = found ? targetNode : bestNode;
+			int length = 0;
+			for(int node = endNode; node >= 0; node = state.getParent(node))
+				length++;
+			currentPath = new int[length];
+			for(int node = endNode; node >= 0; node = state.getParent(node))
+				currentPath[--length] = node;
+		}
+		return currentPath;
+	}
+
+	private Coordinates toWorldPosition(int node) {
+		return new Coordinates(grid.getX(node), grid.getY(node));
+	}
+}
@@ -0,0 +1,44 @@
+package algorithms.astar;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import utils.Coordinates;
+
+/**
+ * Runs path searches on a pool of worker threads, so they can overlap with
+ * the rest of the simulation. Searches run on a copy of the agent's grid
+ * taken when they are submitted, the agent's grid can keep changing.
+ */
+public class PathService {
+
+	private static ForkJoinPool pool;
+
+	static synchronized ForkJoinPool getPool() {
+		if(pool == null)
+			pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		return pool;
+	}
+
+	/**
+	 * Submits a shortest path search.
+	 * @param grid grid to search, must not change anymore (see Grid.copy()).
+	 * @param sourceWorldPosition
+	 * @param targetWorldPosition
+	 * @param jumpPointSearch use Jump Point Search instead of A*.
+	 * @return path without the source node, or null if there is none, once
+	 *         the search is done.
+	 */
+	public static Future<Path> submit(final Grid grid, final Coordinates sourceWorldPosition,
+			final Coordinates targetWorldPosition, final boolean jumpPointSearch) {
+		return getPool().submit(new Callable<Path>() {
+			@Override
+			public Path call() {
+				if(jumpPointSearch)
+					return new JumpPointSearch(grid).FindPath(sourceWorldPosition, targetWorldPosition);
+				return new Pathfinding(grid).FindPath(sourceWorldPosition, targetWorldPosition);
+			}
+		});
+	}
+}
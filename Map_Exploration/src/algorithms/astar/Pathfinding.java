@@ -1,59 +1,95 @@
 package algorithms.astar;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
 import utils.Coordinates;
 
 public class Pathfinding {
 
 	private Grid grid;
+	private Heuristic heuristic;	// Null for the octile distance.
+	private int expandedCount;	// Nodes expanded by the last search.
 	
 	public Pathfinding(int gridSizeX, int gridSizeY) {
-		grid = new Grid(gridSizeX, gridSizeY);
+		this(new Grid(gridSizeX, gridSizeY));
+	}
+	
+	public Pathfinding(Grid grid) {
+		this.grid = grid;
 	}
 	
 	/**
 	 * Finds the shortest path between 2 nodes using A* algorithm.
+	 * Uses the calling thread's search state, so concurrent calls from
+	 * different threads don't interfere with each other.
 	 * @param sourceWorldPosition
 	 * @param targetWorldPosition
 	 * @return shortest path between 2 nodes.
 	 */
-	public List<Node> FindPath(Coordinates sourceWorldPosition, Coordinates targetWorldPosition) {
-		Node sourceNode = grid.getNode(sourceWorldPosition);
-		Node targetNode = grid.getNode(targetWorldPosition);
+	public Path FindPath(Coordinates sourceWorldPosition, Coordinates targetWorldPosition) {
+		return FindPath(sourceWorldPosition, targetWorldPosition, SearchState.forCurrentThread(grid.getMaxSize()));
+	}
+	
+	/**
+	 * Finds the shortest path between 2 nodes using A* algorithm.
+	 * @param sourceWorldPosition
+	 * @param targetWorldPosition
+	 * @param state search state to write to, at least as big as the grid.
+	 * @return shortest path between 2 nodes.
+	 */
+	public Path FindPath(Coordinates sourceWorldPosition, Coordinates targetWorldPosition, SearchState state) {
+		return FindPath(sourceWorldPosition, targetWorldPosition, state, 0, 0, grid.getGridSizeX() - 1,
+				grid.getGridSizeY() - 1);
+	}
+	
+	/**
+	 * Finds the shortest path between 2 nodes using A* algorithm, only
+	 * going through the nodes inside the given rectangle (inclusive).
+	 * @param sourceWorldPosition
+	 * @param targetWorldPosition
+	 * @param state search state to write to, at least as big as the grid.
+	 * @param minX
+	 * @param minY
+	 * @param maxX
+	 * @param maxY
+	 * @return shortest path between 2 nodes inside the rectangle.
+	 */
+	public Path FindPath(Coordinates sourceWorldPosition, Coordinates targetWorldPosition, SearchState state,
+			int minX, int minY, int maxX, int maxY) {
+		int sourceNode = grid.getIndex(sourceWorldPosition.getX(), sourceWorldPosition.getY());
+		int targetNode = grid.getIndex(targetWorldPosition.getX(), targetWorldPosition.getY());
 		
-		List<Node> openSet = new ArrayList<Node>();
-		List<Node> closedSet = new ArrayList<Node>();
-		openSet.add(sourceNode);
+		expandedCount = 0;
+		state.begin();
+		state.open(sourceNode, 0, GetDistance(sourceNode, targetNode), -1);
 		
-		while(openSet.size() > 0) {
-			Node currentNode = openSet.get(0);
-			for (Node node : openSet) {
-				if(node.getFCost() < currentNode.getFCost() || (node.getFCost() == currentNode.getFCost() && node.getHCost() < currentNode.getHCost()))
-					currentNode = node;
-			}
-			
-			openSet.remove(currentNode);
-			closedSet.add(currentNode);
+		while(state.hasOpenNodes()) {
+			int currentNode = state.removeFirst();
+			expandedCount++;
 			
 			// Path has been found.
-			if(currentNode.equals(targetNode))
-				return ReversePath(sourceNode, targetNode);
+			if(currentNode == targetNode)
+				return ReversePath(state, sourceNode, targetNode);
 			
-			for (Node neighbour : grid.getNeighbours(currentNode)) {
-				if(!neighbour.getWalkable() || closedSet.contains(neighbour))
-					continue;
-				
-				int newCostToNeighbour = currentNode.getGCost() + GetDistance(currentNode, neighbour);
-				if(newCostToNeighbour < neighbour.getGCost() || !openSet.contains(neighbour)) {
-					neighbour.setGCost(newCostToNeighbour);
-					neighbour.setHCost(GetDistance(neighbour, targetNode));
-					neighbour.setParent(currentNode);
+			int currentX = grid.getX(currentNode);
+			int currentY = grid.getY(currentNode);
+			for(int x = -1; x <= 1; x++) {
+				for(int y = -1; y <= 1; y++) {
+					if(x == 0 && y == 0)
+						continue;
 					
-					if(!openSet.contains(neighbour))
-						openSet.add(neighbour);
+					int checkX = currentX + x;
+					int checkY = currentY + y;
+					if(checkX < minX || checkX > maxX || checkY < minY || checkY > maxY)
+						continue;
+					
+					int neighbour = grid.getIndex(checkX, checkY);
+					if(!grid.isWalkable(neighbour) || state.isClosed(neighbour))
+						continue;
+					
+					int newCostToNeighbour = state.getGCost(currentNode) + (x != 0 && y != 0 ? 14 : 10);
+					if(!state.isVisited(neighbour))
+						state.open(neighbour, newCostToNeighbour, GetDistance(neighbour, targetNode), currentNode);
+					else if(newCostToNeighbour < state.getGCost(neighbour))
+						state.decrease(neighbour, newCostToNeighbour, currentNode);
 				}
 			}
 		}
@@ -61,39 +97,121 @@ public class Pathfinding {
 		return null;
 	}
 	
+	/**
+	 * Starts an A* search that runs a limited number of expansions at a
+	 * time, see PathSearch.
+	 * @param sourceWorldPosition
+	 * @param targetWorldPosition
+	 * @return search to resume until it's finished, then release.
+	 */
+	public PathSearch StartSearch(Coordinates sourceWorldPosition, Coordinates targetWorldPosition) {
+		return new PathSearch(grid, sourceWorldPosition, targetWorldPosition);
+	}
+	
+	/**
+	 * Finds the shortest path to the nearest node that passes the goal test
+	 * using Dijkstra's algorithm. The search stops at the first goal reached,
+	 * so it only expands the nodes closer than that goal.
+	 * Uses the calling thread's search state.
+	 * @param sourceWorldPosition
+	 * @param goal test applied to every reached node but the source.
+	 * @return shortest path to the nearest goal or null if none can be reached.
+	 */
+	public Path FindNearest(Coordinates sourceWorldPosition, GoalTest goal) {
+		SearchState state = SearchState.forCurrentThread(grid.getMaxSize());
+		int sourceNode = grid.getIndex(sourceWorldPosition.getX(), sourceWorldPosition.getY());
+		
+		state.begin();
+		state.open(sourceNode, 0, 0, -1);
+		
+		while(state.hasOpenNodes()) {
+			int currentNode = state.removeFirst();
+			int currentX = grid.getX(currentNode);
+			int currentY = grid.getY(currentNode);
+			
+			// Nearest goal has been found.
+			if(currentNode != sourceNode && goal.isGoal(currentX, currentY))
+				return ReversePath(state, sourceNode, currentNode);
+			
+			for(int x = -1; x <= 1; x++) {
+				for(int y = -1; y <= 1; y++) {
+					if(x == 0 && y == 0)
+						continue;
+					
+					int checkX = currentX + x;
+					int checkY = currentY + y;
+					if(!grid.isInside(checkX, checkY))
+						continue;
+					
+					int neighbour = grid.getIndex(checkX, checkY);
+					if(!grid.isWalkable(neighbour) || state.isClosed(neighbour))
+						continue;
+					
+					int newCostToNeighbour = state.getGCost(currentNode) + (x != 0 && y != 0 ? 14 : 10);
+					if(!state.isVisited(neighbour))
+						state.open(neighbour, newCostToNeighbour, 0, currentNode);
+					else if(newCostToNeighbour < state.getGCost(neighbour))
+						state.decrease(neighbour, newCostToNeighbour, currentNode);
+				}
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Returns the estimated cost between 2 nodes used by A*, the octile
+	 * distance unless another heuristic was set.
+	 */
+	private int GetDistance(int nodeA, int nodeB) {
+		if(heuristic != null)
+			return heuristic.estimate(nodeA, nodeB);
+		return grid.getDistance(nodeA, nodeB);
+	}
+	
 	/**
 	 * Reverses the path for the entity to traverse.
-	 * Goes from the end node, to his parents, to the start node.
+	 * Goes from the end node, to his parents, to the start node, filling the
+	 * path from its end so it's already in traversal order.
+	 * @param state
 	 * @param startNode
 	 * @param endNode
 	 * @return traversal path.
 	 */
-	private List<Node> ReversePath(Node startNode, Node endNode) {
-		List<Node> path = new ArrayList<Node>();
-		Node currentNode = endNode;
+	private Path ReversePath(SearchState state, int startNode, int endNode) {
+		int length = 0;
+		for(int currentNode = endNode; currentNode != startNode; currentNode = state.getParent(currentNode))
+			length++;
 		
-		while(!currentNode.equals(startNode)) {
-			path.add(currentNode);
-			currentNode = currentNode.getParent();
-		}
-		
-		Collections.reverse(path);
-		return path;
+		int[] positions = new int[length];
+		for(int currentNode = endNode; currentNode != startNode; currentNode = state.getParent(currentNode))
+			positions[--length] = Path.pack(grid.getX(currentNode), grid.getY(currentNode));
+		return new Path(positions);
+	}
+	
+	public Grid getGrid() {
+		return grid;
+	}
+	
+	public Heuristic getHeuristic() {
+		return heuristic;
 	}
 	
 	/**
-	 * Returns the distance between 2 nodes.
-	 * @param source
-	 * @param target
-	 * @return distance between source and target nodes.
+	 * Sets the heuristic used by FindPath. It must never overestimate for
+	 * paths to be the shortest ones, e.g. a LandmarkHeuristic.
+	 * @param heuristic estimate of the cost between 2 nodes, or null for the
+	 *            octile distance.
 	 */
-	private int GetDistance(Node source, Node target) {
-		int distX = Math.abs(target.getWorldPosition().getX() - source.getWorldPosition().getX());
-		int distY = Math.abs(target.getWorldPosition().getY() - source.getWorldPosition().getY());
-		
-		if(distX > distY)
-			return 14 * distY + 10 * (distX - distY);
-		return 14 * distX + 10 * (distY - distX);
+	public void setHeuristic(Heuristic heuristic) {
+		this.heuristic = heuristic;
+	}
+	
+	/**
+	 * Returns the number of nodes expanded by the last FindPath.
+	 */
+	public int getExpandedCount() {
+		return expandedCount;
 	}
 	
 	public void setNodeWalkable(Coordinates coordinates, boolean newWalkable) {
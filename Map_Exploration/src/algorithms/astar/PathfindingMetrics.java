@@ -0,0 +1,288 @@
+package algorithms.astar;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counters of the path queries, summed per agent state and kind of query
+ * (e.g. "Recruiting/computePath/ASTAR"), so the states that spend the most
+ * time planning can be found. Every query records the nodes expanded, the
+ * open set operations (inserts, decreases and removals), the length of the
+ * path returned and the wall time. The sums can be read at any time, and
+ * are printed at the end of a run by the launcher.
+ * Recording allocates nothing once a key was seen: keys are built once per
+ * state class and kind, every thread sums into its own aggregates and
+ * reuses its query, and the threads' sums are only merged when read.
+ */
+public class PathfindingMetrics {
+
+	/**
+	 * Sums of the queries of one kind.
+	 */
+	public static class Aggregate {
+
+		private long queryCount;
+		private long failureCount;	// Queries without a path.
+		private long expandedCount;
+		private long heapOperationCount;
+		private long pathLength;
+		private long nanos;
+		private long maxNanos;
+
+		private Aggregate() {
+		}
+
+		private void add(Aggregate other) {
+			queryCount += other.queryCount;
+			failureCount += other.failureCount;
+			expandedCount += other.expandedCount;
+			heapOperationCount += other.heapOperationCount;
+			pathLength += other.pathLength;
+			nanos += other.nanos;
+			maxNanos = Math.max(maxNanos, other.maxNanos);
+		}
+
+		public long getQueryCount() {
+			return queryCount;
+		}
+
+		public long getFailureCount() {
+			return failureCount;
+		}
+
+		public long getExpandedCount() {
+			return expandedCount;
+		}
+
+		public long getHeapOperationCount() {
+			return heapOperationCount;
+		}
+
+		public long getPathLength() {
+			return pathLength;
+		}
+
+		public long getNanos() {
+			return nanos;
+		}
+
+		public long getMaxNanos() {
+			return maxNanos;
+		}
+	}
+
+	/**
+	 * A query being measured, see begin().
+	 */
+	public static class Query {
+
+		private ThreadMetrics metrics;	// Of the thread that began the query.
+		private boolean active;
+		private String key;
+		private long startNanos;
+		private SearchState state;	// Calling thread's state when the query began.
+		private long startExpandedCount;
+		private long startHeapOperationCount;
+		private int otherExpandedCount;
+		private int otherHeapOperationCount;
+
+		private Query(ThreadMetrics metrics) {
+			this.metrics = metrics;
+		}
+
+		private void begin(String key) {
+			this.key = key;
+			active = true;
+			otherExpandedCount = 0;
+			otherHeapOperationCount = 0;
+			startExpandedCount = 0;
+			startHeapOperationCount = 0;
+			state = SearchState.peekCurrentThread();
+			if(state != null) {
+				startExpandedCount = state.getTotalExpandedCount();
+				startHeapOperationCount = state.getTotalHeapOperationCount();
+			}
+			startNanos = System.nanoTime();
+		}
+
+		/**
+		 * Adds the work done outside the calling thread's search state, like
+		 * D* Lite's own open set.
+		 */
+		public void addCounts(int expandedCount, int heapOperationCount) {
+			otherExpandedCount += expandedCount;
+			otherHeapOperationCount += heapOperationCount;
+		}
+
+		/**
+		 * Ends the query and records it.
+		 * @param path path returned, or null if there is none.
+		 * @return the path, so the caller can return the result of this call.
+		 */
+		public Path end(Path path) {
+			end(path != null ? path.size() : 0, path != null);
+			return path;
+		}
+
+		/**
+		 * Ends the query and records it.
+		 * @param pathLength number of nodes returned.
+		 * @param found false if there is no path.
+		 */
+		public void end(int pathLength, boolean found) {
+			long elapsed = System.nanoTime() - startNanos;
+			long expanded = otherExpandedCount;
+			long heapOperations = otherHeapOperationCount;
+			SearchState endState = SearchState.peekCurrentThread();
+			if(endState != null) {
+				// A state allocated during the query was only used by it.
+				boolean sameState = endState == state;
+				expanded += endState.getTotalExpandedCount() - (sameState ? startExpandedCount : 0);
+				heapOperations += endState.getTotalHeapOperationCount() - (sameState ? startHeapOperationCount : 0);
+			}
+			active = false;
+			metrics.record(key, expanded, heapOperations, pathLength, found, elapsed);
+		}
+	}
+
+	/**
+	 * Sums and reusable query of one thread. The sums are only locked
+	 * against the readers, never against other threads recording.
+	 */
+	private static class ThreadMetrics {
+
+		private final Map<String, Aggregate> aggregates = new HashMap<String, Aggregate>();
+		private final Query query = new Query(this);
+
+		private synchronized void record(String key, long expandedCount, long heapOperationCount, int pathLength,
+				boolean found, long nanos) {
+			Aggregate aggregate = aggregates.get(key);
+			if(aggregate == null) {
+				aggregate = new Aggregate();
+				aggregates.put(key, aggregate);
+			}
+			aggregate.queryCount++;
+			if(!found)
+				aggregate.failureCount++;
+			aggregate.expandedCount += expandedCount;
+			aggregate.heapOperationCount += heapOperationCount;
+			aggregate.pathLength += pathLength;
+			aggregate.nanos += nanos;
+			aggregate.maxNanos = Math.max(aggregate.maxNanos, nanos);
+		}
+
+		private synchronized void addTo(Map<String, Aggregate> sums) {
+			for(Map.Entry<String, Aggregate> entry : aggregates.entrySet()) {
+				Aggregate sum = sums.get(entry.getKey());
+				if(sum == null) {
+					sum = new Aggregate();
+					sums.put(entry.getKey(), sum);
+				}
+				sum.add(entry.getValue());
+			}
+		}
+
+		private synchronized void clear() {
+			aggregates.clear();
+		}
+	}
+
+	private static final List<ThreadMetrics> threadMetrics = new ArrayList<ThreadMetrics>();	// Of every thread that recorded.
+	private static final ThreadLocal<ThreadMetrics> currentThreadMetrics = new ThreadLocal<ThreadMetrics>() {
+		@Override
+		protected ThreadMetrics initialValue() {
+			ThreadMetrics metrics = new ThreadMetrics();
+			synchronized(threadMetrics) {
+				threadMetrics.add(metrics);
+			}
+			return metrics;
+		}
+	};
+	private static final ConcurrentHashMap<Class<?>, Map<String, String>> keys = new ConcurrentHashMap<Class<?>, Map<String, String>>();
+
+	/**
+	 * Returns the key of the queries of a kind made in an agent state,
+	 * "<state class simple name>/<kind>", or "None/<kind>" without a state.
+	 * The same string is returned every time.
+	 * @param stateClass class of the agent's state, or null.
+	 * @param kind name of the query.
+	 */
+	public static String getKey(Class<?> stateClass, String kind) {
+		Class<?> keyClass = stateClass != null ? stateClass : Void.class;
+		Map<String, String> classKeys = keys.get(keyClass);
+		if(classKeys == null) {
+			classKeys = new ConcurrentHashMap<String, String>();
+			Map<String, String> previous = keys.putIfAbsent(keyClass, classKeys);
+			if(previous != null)
+				classKeys = previous;
+		}
+		String key = classKeys.get(kind);
+		if(key == null) {
+			key = (stateClass != null ? stateClass.getSimpleName() : "None") + "/" + kind;
+			classKeys.put(kind, key);
+		}
+		return key;
+	}
+
+	/**
+	 * Starts measuring a query made on the calling thread.
+	 * @param key see getKey().
+	 * @return query to end once it returns. It's reused by the thread's
+	 *         next query, unless this one is still running.
+	 */
+	public static Query begin(String key) {
+		ThreadMetrics metrics = currentThreadMetrics.get();
+		// Nested queries, like a path query made to take a step, get their own.
+		Query query = metrics.query.active ? new Query(metrics) : metrics.query;
+		query.begin(key);
+		return query;
+	}
+
+	/**
+	 * Adds a query made on the calling thread to the sums.
+	 * @param key see getKey().
+	 */
+	public static void record(String key, long expandedCount, long heapOperationCount, int pathLength,
+			boolean found, long nanos) {
+		currentThreadMetrics.get().record(key, expandedCount, heapOperationCount, pathLength, found, nanos);
+	}
+
+	/**
+	 * Returns the sums of every thread, sorted by key.
+	 */
+	public static Map<String, Aggregate> getAggregates() {
+		Map<String, Aggregate> sums = new TreeMap<String, Aggregate>();
+		synchronized(threadMetrics) {
+			for(ThreadMetrics metrics : threadMetrics)
+				metrics.addTo(sums);
+		}
+		return sums;
+	}
+
+	public static void reset() {
+		synchronized(threadMetrics) {
+			for(ThreadMetrics metrics : threadMetrics)
+				metrics.clear();
+		}
+	}
+
+	/**
+	 * Prints one line per kind of query with its sums and averages.
+	 */
+	public static void print(PrintStream out) {
+		out.println("Pathfinding metrics (queries, failures, avg expanded, avg heap ops, avg path, avg us, max us, total ms):");
+		for(Map.Entry<String, Aggregate> entry : getAggregates().entrySet()) {
+			Aggregate aggregate = entry.getValue();
+			long queries = Math.max(1, aggregate.queryCount);
+			out.printf("  %s: %d, %d, %.1f, %.1f, %.1f, %.1f, %.1f, %.1f%n", entry.getKey(), aggregate.queryCount,
+					aggregate.failureCount, (double) aggregate.expandedCount / queries,
+					(double) aggregate.heapOperationCount / queries, (double) aggregate.pathLength / queries,
+					aggregate.nanos / 1e3 / queries, aggregate.maxNanos / 1e3, aggregate.nanos / 1e6);
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package algorithms.astar;
+
+/**
+ * Planners an agent's AStar starts with, set from the launcher's
+ * parameters. The defaults are the plain A* and the shared exit field.
+ */
+public class PlannerSettings {
+
+	private AStar.Planner planner = AStar.Planner.ASTAR;
+	private AStar.ExitPlanner exitPlanner = AStar.ExitPlanner.DISTANCE_FIELD;
+	private boolean landmarkHeuristic;
+	private boolean firstMoveTable;
+
+	public AStar.Planner getPlanner() {
+		return planner;
+	}
+
+	public void setPlanner(AStar.Planner planner) {
+		this.planner = planner;
+	}
+
+	public AStar.ExitPlanner getExitPlanner() {
+		return exitPlanner;
+	}
+
+	public void setExitPlanner(AStar.ExitPlanner exitPlanner) {
+		this.exitPlanner = exitPlanner;
+	}
+
+	/**
+	 * @return true to use the landmark heuristic (ALT), see
+	 *         AStar.setLandmarkHeuristic().
+	 */
+	public boolean isLandmarkHeuristic() {
+		return landmarkHeuristic;
+	}
+
+	public void setLandmarkHeuristic(boolean landmarkHeuristic) {
+		this.landmarkHeuristic = landmarkHeuristic;
+	}
+
+	/**
+	 * @return true to build the first move table when the agent starts, see
+	 *         AStar.setFirstMoveTable(). Only useful on maps known from the
+	 *         start or that rarely change.
+	 */
+	public boolean isFirstMoveTable() {
+		return firstMoveTable;
+	}
+
+	public void setFirstMoveTable(boolean firstMoveTable) {
+		this.firstMoveTable = firstMoveTable;
+	}
+}
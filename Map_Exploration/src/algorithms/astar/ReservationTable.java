@@ -0,0 +1,82 @@
+package algorithms.astar;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Space-time reservations shared by the agents of a world that plan
+ * cooperatively. An agent reserves the node it will be on after each of
+ * its next ticks, so the others plan around it instead of bumping into it.
+ * A reservation for tick t is the node the agent is on once it acted in t.
+ */
+public class ReservationTable {
+
+	private static final Map<Object, ReservationTable> tables = new WeakHashMap<Object, ReservationTable>();
+
+	private Map<Long, Object> owners;	// Agent holding each (tick, node).
+	private Map<Object, long[]> reservations;	// Keys reserved by each agent.
+
+	public ReservationTable() {
+		owners = new HashMap<Long, Object>();
+		reservations = new HashMap<Object, long[]>();
+	}
+
+	/**
+	 * Returns the table of a world, creating it the first time.
+	 * @param world the agents' grid, used as key.
+	 * @return table shared by all the agents of the world.
+	 */
+	public static synchronized ReservationTable forWorld(Object world) {
+		ReservationTable table = tables.get(world);
+		if(table == null) {
+			table = new ReservationTable();
+			tables.put(world, table);
+		}
+		return table;
+	}
+
+	/**
+	 * @param node index of the node.
+	 * @param tick
+	 * @return agent holding the node after the tick or null.
+	 */
+	public synchronized Object getOwner(int node, long tick) {
+		return owners.get(getKey(node, tick));
+	}
+
+	/**
+	 * Replaces the agent's reservations with a new plan.
+	 * @param agent
+	 * @param nodes node the agent is on after each tick.
+	 * @param firstTick tick of the first node.
+	 */
+	public synchronized void reserve(Object agent, int[] nodes, long firstTick) {
+		release(agent);
+		long[] keys = new long[nodes.length];
+		for(int i = 0; i < nodes.length; i++) {
+			keys[i] = getKey(nodes[i], firstTick + i);
+			if(!owners.containsKey(keys[i]))
+				owners.put(keys[i], agent);
+		}
+		reservations.put(agent, keys);
+	}
+
+	/**
+	 * Removes all the reservations of an agent.
+	 * @param agent
+	 */
+	public synchronized void release(Object agent) {
+		long[] keys = reservations.remove(agent);
+		if(keys == null)
+			return;
+		for(long key : keys) {
+			if(owners.get(key) == agent)
+				owners.remove(key);
+		}
+	}
+
+	private long getKey(int node, long tick) {
+		return (tick << 32) | node;
+	}
+}
@@ -0,0 +1,222 @@
+package algorithms.astar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Per-search A* bookkeeping kept in primitive arrays indexed by Grid.getIndex().
+ * Values are invalidated in O(1) between searches by bumping a generation
+ * counter, so the arrays are only allocated once and the grid's nodes are
+ * never written to. A state must only be used by one search at a time.
+ */
+public class SearchState {
+
+	private static final ThreadLocal<SearchState> threadStates = new ThreadLocal<SearchState>();
+	private static final List<SearchState> pool = new ArrayList<SearchState>();	// Released long searches' states.
+
+	private static final int CLOSED = -1;
+
+	private int[] gCost;	// Distance from the source node.
+	private int[] hCost;	// Distance from the target node (heuristic).
+	private int[] parent;
+	private int[] generation;	// Search in which the entry was last written.
+	private int[] heapIndex;	// Position in the open set or CLOSED.
+	private int[] heap;	// Binary min-heap of node indices ordered by f then h cost.
+	private int heapCount;
+	private int currentGeneration;
+	private int expandedCount;	// Nodes removed from the open set in this search.
+	private long totalExpandedCount;	// Over every search, for PathfindingMetrics.
+	private long totalHeapOperationCount;	// Inserts, decreases and removals over every search.
+
+	public SearchState(int maxSize) {
+		gCost = new int[maxSize];
+		hCost = new int[maxSize];
+		parent = new int[maxSize];
+		generation = new int[maxSize];
+		heapIndex = new int[maxSize];
+		heap = new int[maxSize];
+	}
+
+	/**
+	 * Returns this thread's search state, (re)allocating it if it's too small.
+	 * @param maxSize number of nodes of the grid that will be searched.
+	 * @return search state owned by the current thread.
+	 */
+	public static SearchState forCurrentThread(int maxSize) {
+		SearchState state = threadStates.get();
+		if(state == null || state.capacity() < maxSize) {
+			state = new SearchState(maxSize);
+			threadStates.set(state);
+		}
+		return state;
+	}
+
+	/**
+	 * Returns this thread's search state without allocating it.
+	 * @return search state owned by the current thread or null.
+	 */
+	public static SearchState peekCurrentThread() {
+		return threadStates.get();
+	}
+	
+	/**
+	 * Returns a state for a search that lasts longer than a call, like a
+	 * PathSearch, so other searches can't overwrite it. Must be given back
+	 * with release() once the search is over.
+	 * @param maxSize number of nodes of the grid that will be searched.
+	 * @return search state owned by the caller until released.
+	 */
+	public static synchronized SearchState acquire(int maxSize) {
+		for(int i = pool.size() - 1; i >= 0; i--) {
+			if(pool.get(i).capacity() >= maxSize)
+				return pool.remove(i);
+		}
+		return new SearchState(maxSize);
+	}
+
+	public static synchronized void release(SearchState state) {
+		pool.add(state);
+	}
+
+	public int capacity() {
+		return generation.length;
+	}
+
+	/**
+	 * Forgets every value written by the previous search.
+	 */
+	public void begin() {
+		heapCount = 0;
+		expandedCount = 0;
+		currentGeneration++;
+		if(currentGeneration == Integer.MAX_VALUE) {
+			Arrays.fill(generation, 0);
+			currentGeneration = 1;
+		}
+	}
+
+	public boolean isVisited(int node) {
+		return generation[node] == currentGeneration;
+	}
+
+	public boolean isOpen(int node) {
+		return isVisited(node) && heapIndex[node] != CLOSED;
+	}
+
+	public boolean isClosed(int node) {
+		return isVisited(node) && heapIndex[node] == CLOSED;
+	}
+
+	/**
+	 * Adds a node that wasn't visited in this search to the open set.
+	 */
+	public void open(int node, int g, int h, int parentNode) {
+		generation[node] = currentGeneration;
+		gCost[node] = g;
+		hCost[node] = h;
+		parent[node] = parentNode;
+		heapIndex[node] = heapCount;
+		heap[heapCount] = node;
+		heapCount++;
+		totalHeapOperationCount++;
+		sortUp(node);
+	}
+
+	/**
+	 * Lowers the g cost of a node that is in the open set.
+	 */
+	public void decrease(int node, int g, int parentNode) {
+		gCost[node] = g;
+		parent[node] = parentNode;
+		totalHeapOperationCount++;
+		sortUp(node);
+	}
+
+	/**
+	 * Removes the open node with the lowest f cost and closes it.
+	 * @return index of the removed node.
+	 */
+	public int removeFirst() {
+		int first = heap[0];
+		heapCount--;
+		if(heapCount > 0) {
+			heap[0] = heap[heapCount];
+			heapIndex[heap[0]] = 0;
+			sortDown(heap[0]);
+		}
+		heapIndex[first] = CLOSED;
+		expandedCount++;
+		totalExpandedCount++;
+		totalHeapOperationCount++;
+		return first;
+	}
+
+	public boolean hasOpenNodes() {
+		return heapCount > 0;
+	}
+
+	public int getExpandedCount() {
+		return expandedCount;
+	}
+	
+	public long getTotalExpandedCount() {
+		return totalExpandedCount;
+	}
+	
+	public long getTotalHeapOperationCount() {
+		return totalHeapOperationCount;
+	}
+
+	public int getGCost(int node) {
+		return gCost[node];
+	}
+
+	public int getHCost(int node) {
+		return hCost[node];
+	}
+
+	public int getParent(int node) {
+		return parent[node];
+	}
+
+	private boolean isBefore(int nodeA, int nodeB) {
+		int fA = gCost[nodeA] + hCost[nodeA];
+		int fB = gCost[nodeB] + hCost[nodeB];
+		return fA < fB || (fA == fB && hCost[nodeA] < hCost[nodeB]);
+	}
+
+	private void sortUp(int node) {
+		int index = heapIndex[node];
+		while(index > 0) {
+			int parentIndex = (index - 1) / 2;
+			int parentNode = heap[parentIndex];
+			if(!isBefore(node, parentNode))
+				break;
+			heap[index] = parentNode;
+			heapIndex[parentNode] = index;
+			index = parentIndex;
+		}
+		heap[index] = node;
+		heapIndex[node] = index;
+	}
+
+	private void sortDown(int node) {
+		int index = heapIndex[node];
+		while(true) {
+			int childIndex = index * 2 + 1;
+			if(childIndex >= heapCount)
+				break;
+			if(childIndex + 1 < heapCount && isBefore(heap[childIndex + 1], heap[childIndex]))
+				childIndex++;
+			int childNode = heap[childIndex];
+			if(!isBefore(childNode, node))
+				break;
+			heap[index] = childNode;
+			heapIndex[childNode] = index;
+			index = childIndex;
+		}
+		heap[index] = node;
+		heapIndex[node] = index;
+	}
+}
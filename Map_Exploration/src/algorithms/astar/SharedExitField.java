@@ -0,0 +1,84 @@
+package algorithms.astar;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import utils.Coordinates;
+
+/**
+ * Distance field to the exit shared by every agent of the same world. It is
+ * built on the world's StaticLayer and repaired once per obstacle change,
+ * instead of each agent searching for the exit every tick.
+ * Agents standing in the way are not part of the field, each agent avoids
+ * them locally when picking its next step.
+ */
+public class SharedExitField {
+
+	private static final Map<Object, SharedExitField> fields = new WeakHashMap<Object, SharedExitField>();
+
+	private Grid grid;	// Static obstacles of the world.
+	private Coordinates exit;
+	private DistanceField field;
+	private int syncedVersion;	// Layer version the field was repaired up to.
+
+	private SharedExitField(StaticLayer layer, Coordinates exit) {
+		grid = new Grid(layer);
+		this.exit = exit;
+		field = new DistanceField(grid, grid.getIndex(exit.getX(), exit.getY()));
+		syncedVersion = grid.getLayerVersion();
+	}
+
+	/**
+	 * Returns the field of a world, creating it the first time. A new field
+	 * is created if the exit of the world changed.
+	 * @param world the agents' grid, used as key.
+	 * @param gridSizeX
+	 * @param gridSizeY
+	 * @param exit world position of the exit.
+	 * @return field shared by all the agents of the world.
+	 */
+	public static synchronized SharedExitField forWorld(Object world, int gridSizeX, int gridSizeY, Coordinates exit) {
+		SharedExitField sharedField = fields.get(world);
+		if(sharedField == null || !sharedField.exit.equals(exit)) {
+			sharedField = new SharedExitField(StaticLayer.forWorld(world, gridSizeX, gridSizeY), exit);
+			fields.put(world, sharedField);
+		}
+		return sharedField;
+	}
+
+	public Coordinates getExit() {
+		return exit;
+	}
+
+	public int getVersion() {
+		return field.getVersion();
+	}
+
+	/**
+	 * Returns the cost from a world position to the exit.
+	 * @param x
+	 * @param y
+	 * @return cost or DistanceField.INFINITY if the exit can't be reached.
+	 */
+	public synchronized int getDistance(int x, int y) {
+		update();
+		return field.getDistance(grid.getIndex(x, y));
+	}
+
+	/**
+	 * Returns the field, repaired for the latest obstacle changes.
+	 */
+	public synchronized DistanceField getDistanceField() {
+		update();
+		return field;
+	}
+
+	/**
+	 * Repairs the field for the changes made to the layer since last time.
+	 */
+	private void update() {
+		grid.refresh();
+		for(; syncedVersion < grid.getLayerVersion(); syncedVersion++)
+			field.onWalkableChanged(grid.getLayer().getChange(syncedVersion));
+	}
+}
@@ -0,0 +1,138 @@
+package algorithms.astar;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Walkability of the static obstacles learned about a world, shared by all
+ * the agents exploring it. The bits are split into fixed size chunks and a
+ * change copies the one chunk it touches, so a snapshot never changes once
+ * taken and unchanged chunks are shared by every snapshot.
+ * Every change is logged, so readers holding derived data (search trees,
+ * distance fields...) can catch up with the nodes changed since their
+ * snapshot.
+ */
+public class StaticLayer {
+
+	static final int CHUNK_SHIFT = 12;	// 4096 nodes per chunk.
+	static final int WORD_MASK = (1 << (CHUNK_SHIFT - 6)) - 1;
+
+	private static final Map<Object, StaticLayer> layers = new WeakHashMap<Object, StaticLayer>();
+
+	/**
+	 * Immutable state of the layer after a given number of changes.
+	 */
+	public static class Snapshot {
+
+		final long[][] chunks;
+		final int version;
+
+		private Snapshot(long[][] chunks, int version) {
+			this.chunks = chunks;
+			this.version = version;
+		}
+
+		public int getVersion() {
+			return version;
+		}
+	}
+
+	private int gridSizeX;
+	private int gridSizeY;
+	private final Snapshot base;	// Before any change.
+	private volatile Snapshot snapshot;
+	private int[] changes = new int[64];	// Node changed by each version.
+
+	public StaticLayer(int gridSizeX, int gridSizeY) {
+		this.gridSizeX = gridSizeX;
+		this.gridSizeY = gridSizeY;
+
+		// Every chunk starts as the same all walkable array.
+		long[] walkableChunk = new long[WORD_MASK + 1];
+		Arrays.fill(walkableChunk, -1L);
+		long[][] chunks = new long[((gridSizeX * gridSizeY - 1) >>> CHUNK_SHIFT) + 1][];
+		Arrays.fill(chunks, walkableChunk);
+		base = new Snapshot(chunks, 0);
+		snapshot = base;
+	}
+
+	/**
+	 * Returns the layer of a world, creating it the first time.
+	 * @param world the agents' grid, used as key.
+	 * @param gridSizeX
+	 * @param gridSizeY
+	 * @return layer shared by all the agents of the world.
+	 */
+	public static synchronized StaticLayer forWorld(Object world, int gridSizeX, int gridSizeY) {
+		StaticLayer layer = layers.get(world);
+		if(layer == null) {
+			layer = new StaticLayer(gridSizeX, gridSizeY);
+			layers.put(world, layer);
+		}
+		return layer;
+	}
+
+	public int getGridSizeX() {
+		return gridSizeX;
+	}
+
+	public int getGridSizeY() {
+		return gridSizeY;
+	}
+
+	public int getChunkCount() {
+		return snapshot.chunks.length;
+	}
+
+	public Snapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Returns the snapshot the layer started with, every node walkable.
+	 */
+	public Snapshot getBaseSnapshot() {
+		return base;
+	}
+
+	/**
+	 * Returns the node changed by a version of the layer.
+	 * @param version between 0 and the latest snapshot's version - 1.
+	 * @return index of the node.
+	 */
+	public synchronized int getChange(int version) {
+		return changes[version];
+	}
+
+	/**
+	 * Changes the walkability of a node. Nothing is done, and no version is
+	 * added, if the node already had it.
+	 * @param index index of the node.
+	 * @param newWalkable
+	 * @return true if the node changed.
+	 */
+	public synchronized boolean setWalkable(int index, boolean newWalkable) {
+		long[][] chunks = snapshot.chunks;
+		int chunkIndex = index >>> CHUNK_SHIFT;
+		int word = (index >>> 6) & WORD_MASK;
+		long bit = 1L << index;
+		if(((chunks[chunkIndex][word] & bit) != 0) == newWalkable)
+			return false;
+
+		long[] chunk = chunks[chunkIndex].clone();
+		if(newWalkable)
+			chunk[word] |= bit;
+		else
+			chunk[word] &= ~bit;
+		chunks = chunks.clone();
+		chunks[chunkIndex] = chunk;
+
+		int version = snapshot.version;
+		if(version == changes.length)
+			changes = Arrays.copyOf(changes, version * 2);
+		changes[version] = index;
+		snapshot = new Snapshot(chunks, version + 1);
+		return true;
+	}
+}
@@ -0,0 +1,178 @@
+package algorithms.astar;
+
+import java.util.Arrays;
+
+/**
+ * Nodes where an overlay grid differs from the layer's snapshot it reads,
+ * as masks of 64 nodes to xor with the snapshot's words. Only the words
+ * with a difference are stored, in an open addressing table, and a bit per
+ * word tells which ones are there so the table is only probed for them.
+ * A chunk of the layer with many differing words gets a plain array of
+ * masks instead, which takes less room then, until none differ anymore.
+ */
+class WalkabilityDiff {
+
+	private static final int EMPTY = -1;
+	private static final int CHUNK_WORDS = StaticLayer.WORD_MASK + 1;
+	private static final int WORD_CHUNK_SHIFT = StaticLayer.CHUNK_SHIFT - 6;	// From a word to its chunk.
+	private static final int DENSE_WORDS = CHUNK_WORDS / 4;	// Words in the table that make a chunk dense.
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] present;	// Bit set when a word has a mask in the table.
+	private int[] words = new int[0];	// Word index of each slot, or EMPTY.
+	private long[] masks = new long[0];	// Nodes of the word that differ from the snapshot.
+	private int size;	// Words in the table.
+	private int shift;	// 32 - log2 of the table's length.
+	private long[][] dense;	// Masks of the dense chunks, null for the others.
+	private int[] chunkWords;	// Words with a difference in each chunk.
+
+	WalkabilityDiff(int maxSize) {
+		int wordCount = ((maxSize - 1) >>> 6) + 1;
+		present = new long[((wordCount - 1) >>> 6) + 1];
+		int chunkCount = ((maxSize - 1) >>> StaticLayer.CHUNK_SHIFT) + 1;
+		dense = new long[chunkCount][];
+		chunkWords = new int[chunkCount];
+	}
+
+	/**
+	 * Returns the nodes of a word that differ from the snapshot.
+	 * @param word index of the node divided by 64.
+	 * @return mask, 0 if none differ.
+	 */
+	long getMask(int word) {
+		if((present[word >>> 6] & (1L << word)) != 0)
+			return masks[find(word)];
+		long[] chunk = dense[word >>> WORD_CHUNK_SHIFT];
+		return chunk != null ? chunk[word & StaticLayer.WORD_MASK] : 0;
+	}
+
+	/**
+	 * Switches a node between differing and not differing.
+	 * @param index index of the node.
+	 */
+	void flip(int index) {
+		int word = index >>> 6;
+		int chunk = index >>> StaticLayer.CHUNK_SHIFT;
+		long bit = 1L << index;
+		if(dense[chunk] != null) {
+			long mask = dense[chunk][word & StaticLayer.WORD_MASK] ^= bit;
+			if(mask == bit)
+				chunkWords[chunk]++;
+			else if(mask == 0 && --chunkWords[chunk] == 0)
+				dense[chunk] = null;
+			return;
+		}
+
+		if((present[word >>> 6] & (1L << word)) != 0) {
+			int slot = find(word);
+			masks[slot] ^= bit;
+			if(masks[slot] == 0) {
+				remove(slot);
+				chunkWords[chunk]--;
+				if(size * 8 < words.length && words.length > MIN_CAPACITY)
+					resize(words.length / 2);
+			}
+			return;
+		}
+
+		if(chunkWords[chunk] == DENSE_WORDS) {
+			makeDense(chunk);
+			flip(index);
+			return;
+		}
+		add(word, bit);
+		chunkWords[chunk]++;
+	}
+
+	WalkabilityDiff copy() {
+		WalkabilityDiff copy = new WalkabilityDiff(1);
+		copy.present = present.clone();
+		copy.words = words.clone();
+		copy.masks = masks.clone();
+		copy.size = size;
+		copy.shift = shift;
+		copy.dense = dense.clone();
+		for(int chunk = 0; chunk < dense.length; chunk++) {
+			if(dense[chunk] != null)
+				copy.dense[chunk] = dense[chunk].clone();
+		}
+		copy.chunkWords = chunkWords.clone();
+		return copy;
+	}
+
+	/**
+	 * Moves the words of a chunk from the table to an array of masks.
+	 */
+	private void makeDense(int chunk) {
+		long[] chunkMasks = new long[CHUNK_WORDS];
+		for(int word = chunk << WORD_CHUNK_SHIFT; word < (chunk + 1) << WORD_CHUNK_SHIFT; word++) {
+			if((present[word >>> 6] & (1L << word)) == 0)
+				continue;
+			int slot = find(word);
+			chunkMasks[word & StaticLayer.WORD_MASK] = masks[slot];
+			remove(slot);
+		}
+		dense[chunk] = chunkMasks;
+		if(size * 8 < words.length && words.length > MIN_CAPACITY)
+			resize(Math.max(MIN_CAPACITY, Integer.highestOneBit(size) * 4));
+	}
+
+	private void add(int word, long mask) {
+		if((size + 1) * 2 > words.length)
+			resize(Math.max(MIN_CAPACITY, words.length * 2));
+		int slot = slotOf(word);
+		while(words[slot] != EMPTY)
+			slot = (slot + 1) & (words.length - 1);
+		words[slot] = word;
+		masks[slot] = mask;
+		present[word >>> 6] |= 1L << word;
+		size++;
+	}
+
+	private int slotOf(int word) {
+		// Fibonacci hashing, nearby words land far apart.
+		return (word * 0x9E3779B9) >>> shift;
+	}
+
+	private int find(int word) {
+		int slot = slotOf(word);
+		while(words[slot] != word)
+			slot = (slot + 1) & (words.length - 1);
+		return slot;
+	}
+
+	/**
+	 * Empties a slot and moves back the words probed past it, so no search
+	 * stops early at the hole.
+	 */
+	private void remove(int slot) {
+		present[words[slot] >>> 6] &= ~(1L << words[slot]);
+		size--;
+		int hole = slot;
+		for(int next = (slot + 1) & (words.length - 1); words[next] != EMPTY; next = (next + 1) & (words.length - 1)) {
+			int home = slotOf(words[next]);
+			// Moves the word if its home slot isn't between the hole and where it is.
+			if(((next - home) & (words.length - 1)) >= ((next - hole) & (words.length - 1))) {
+				words[hole] = words[next];
+				masks[hole] = masks[next];
+				hole = next;
+			}
+		}
+		words[hole] = EMPTY;
+		masks[hole] = 0;
+	}
+
+	private void resize(int capacity) {
+		int[] oldWords = words;
+		long[] oldMasks = masks;
+		words = new int[capacity];
+		Arrays.fill(words, EMPTY);
+		masks = new long[capacity];
+		shift = 32 - Integer.numberOfTrailingZeros(capacity);
+		size = 0;
+		for(int i = 0; i < oldWords.length; i++) {
+			if(oldWords[i] != EMPTY)
+				add(oldWords[i], oldMasks[i]);
+		}
+	}
+}
@@ -1,12 +1,9 @@
 package algorithms.pledge;
 
 import entities.Obstacle;
-import repast.simphony.query.space.grid.GridCell;
-import repast.simphony.query.space.grid.GridCellNgh;
 import repast.simphony.space.grid.Grid;
-
-import java.util.Iterator;
-import java.util.List;
+import utils.Coordinates;
+import utils.ObstacleMap;
 
 public class NeighbourObstacles {
     private Object frontObject;
@@ -21,69 +18,25 @@ public class NeighbourObstacles {
         this.rightObject = rightObject;
     }
 
-    public NeighbourObstacles(Grid grid, NeighbourPoints pts) {
-        int maxX = grid.getDimensions().getWidth();
-        int maxY = grid.getDimensions().getHeight();
-
-        if (pts.frontX() >= 0 && pts.frontX() < maxX && pts.frontY() >= 0 && pts.frontY() < maxY) {
-            GridCellNgh<Object> nghCreator = new GridCellNgh<>(grid, pts.front().toGridPoint(), Object.class,0, 0);
-            List<GridCell<Object>> cells = nghCreator.getNeighborhood(true);
-            for (GridCell<Object> gridCell : cells) {
-                Iterator it = gridCell.items().iterator();
-                while (it.hasNext()) {
-                    Object obj = it.next();
-                    if (obj instanceof Obstacle) {
-                        frontObject = obj;
-                        break;
-                    }
-                }
-            }
-        }
-
-        if (pts.backX() >= 0 && pts.backX() < maxX && pts.backY() >= 0 && pts.backY() < maxY) {
-            GridCellNgh<Object> nghCreator = new GridCellNgh<>(grid, pts.back().toGridPoint(), Object.class,0, 0);
-            List<GridCell<Object>> cells = nghCreator.getNeighborhood(true);
-            for (GridCell<Object> gridCell : cells) {
-                Iterator it = gridCell.items().iterator();
-                while (it.hasNext()) {
-                    Object obj = it.next();
-                    if (obj instanceof Obstacle) {
-                        backObject = obj;
-                        break;
-                    }
-                }
-            }
-        }
-
-        if (pts.rightX() >= 0 && pts.rightX() < maxX && pts.rightY() >= 0 && pts.rightY() < maxY)  {
-            GridCellNgh<Object> nghCreator = new GridCellNgh<>(grid, pts.left().toGridPoint(), Object.class,0, 0);
-            List<GridCell<Object>> cells = nghCreator.getNeighborhood(true);
-            for (GridCell<Object> gridCell : cells) {
-                Iterator it = gridCell.items().iterator();
-                while (it.hasNext()) {
-                    Object obj = it.next();
-                    if (obj instanceof Obstacle) {
-                        leftObject = obj;
-                        break;
-                    }
-                }
-            }
-        }
+    public NeighbourObstacles(Grid grid, ObstacleMap obstacles, NeighbourPoints pts) {
+        frontObject = getObstacle(grid, obstacles, pts.front());
+        backObject = getObstacle(grid, obstacles, pts.back());
+        leftObject = getObstacle(grid, obstacles, pts.left());
+        rightObject = getObstacle(grid, obstacles, pts.right());
+    }
 
-        if (pts.leftX() >= 0 && pts.leftX() < maxX && pts.leftY() >= 0 && pts.leftY() < maxY)  {
-            GridCellNgh<Object> nghCreator = new GridCellNgh<>(grid, pts.right().toGridPoint(), Object.class,0, 0);
-            List<GridCell<Object>> cells = nghCreator.getNeighborhood(true);
-            for (GridCell<Object> gridCell : cells) {
-                Iterator it = gridCell.items().iterator();
-                while (it.hasNext()) {
-                    Object obj = it.next();
-                    if (obj instanceof Obstacle) {
-                        rightObject = obj;
-                        break;
-                    }
-                }
-            }
+    /**
+     * Returns the obstacle at a point, or null if there's none. The grid is
+     * only read if the point has one.
+     */
+    private static Object getObstacle(Grid grid, ObstacleMap obstacles, Coordinates point) {
+        if (!obstacles.isBlocked(point.getX(), point.getY()))
+            return null;
+        for (Object obj : grid.getObjectsAt(point.getX(), point.getY())) {
+            if (obj instanceof Obstacle)
+                return obj;
         }
+        return null;
     }
 
     public boolean hasObstacle() {
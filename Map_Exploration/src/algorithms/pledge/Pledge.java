@@ -162,25 +162,25 @@ public class Pledge {
             // Facing Right
             if (displayMessages) System.out.println("PLEDGE: Detecting direction - RIGHT");
             NeighbourPoints pts = new NeighbourPoints(this.grid.getLocation(this.agent), NeighbourPoints.Direction.RIGHT);
-            NeighbourObstacles objs = new NeighbourObstacles(this.grid, pts);
+            NeighbourObstacles objs = new NeighbourObstacles(this.grid, agent.getObstacleMap(), pts);
             nextLocation = this.getNextLocation(pts, objs, displayMessages);
         } else if (pt.getX() < this.previousPoint.getX()) {
             // Facing Left
             if (displayMessages) System.out.println("PLEDGE: Detecting direction - LEFT");
             NeighbourPoints pts = new NeighbourPoints(this.grid.getLocation(this.agent), NeighbourPoints.Direction.LEFT);
-            NeighbourObstacles objs = new NeighbourObstacles(this.grid, pts);
+            NeighbourObstacles objs = new NeighbourObstacles(this.grid, agent.getObstacleMap(), pts);
             nextLocation = this.getNextLocation(pts, objs, displayMessages);
         } else if (pt.getY() > this.previousPoint.getY()) {
             // Facing Upwards
             if (displayMessages) System.out.println("PLEDGE: Detecting direction - Upwards");
             NeighbourPoints pts = new NeighbourPoints(this.grid.getLocation(this.agent), NeighbourPoints.Direction.UPWARDS);
-            NeighbourObstacles objs = new NeighbourObstacles(this.grid, pts);
+            NeighbourObstacles objs = new NeighbourObstacles(this.grid, agent.getObstacleMap(), pts);
             nextLocation = this.getNextLocation(pts, objs, displayMessages);
         } else if (pt.getY() < this.previousPoint.getY()) {
             // Facing Downwards
             if (displayMessages) System.out.println("PLEDGE: Detecting direction - DOWNWARDS");
             NeighbourPoints pts = new NeighbourPoints(this.grid.getLocation(this.agent), NeighbourPoints.Direction.DOWNWARDS);
-            NeighbourObstacles objs = new NeighbourObstacles(this.grid, pts);
+            NeighbourObstacles objs = new NeighbourObstacles(this.grid, agent.getObstacleMap(), pts);
             nextLocation = this.getNextLocation(pts, objs, displayMessages);
         } else {
             // First iteration, assuming one direction
@@ -190,7 +190,7 @@ public class Pledge {
             int offset = 1;
             do {
                 pts = new NeighbourPoints(this.grid.getLocation(agent), NeighbourPoints.Direction.UPWARDS, offset);
-                objs = new NeighbourObstacles(this.grid, pts);
+                objs = new NeighbourObstacles(this.grid, agent.getObstacleMap(), pts);
                 nextLocation = this.getFirstLocation(pts, objs, displayMessages);
                 if (nextLocation != null) break;
             } while ( ++offset <= this.agent.getRadious());
@@ -213,7 +213,7 @@ public class Pledge {
         }
 
         NeighbourPoints pts = new NeighbourPoints(coordinates.toGridPoint(), NeighbourPoints.Direction.UPWARDS);
-        NeighbourObstacles obj = new NeighbourObstacles(grid, pts);
+        NeighbourObstacles obj = new NeighbourObstacles(grid, agent.getObstacleMap(), pts);
 
         return false;
     }
@@ -5,6 +5,7 @@ import java.util.List;
 
 import agents.Explorer;
 import algorithms.astar.AStar;
+import algorithms.astar.OccupancyLayer;
 import algorithms.dfs.DFS;
 import algorithms.pledge.Pledge;
 import communication.GroupMessage;
@@ -13,6 +14,7 @@ import entities.Exit;
 import entities.UndiscoveredCell;
 import jade.lang.acl.ACLMessage;
 import jade.lang.acl.UnreadableException;
+import repast.simphony.engine.environment.RunEnvironment;
 import repast.simphony.query.space.grid.GridCell;
 import repast.simphony.query.space.grid.GridCellNgh;
 import repast.simphony.space.grid.GridPoint;
@@ -42,6 +44,9 @@ public class Exploration extends CyclicBehaviour {
 	private IAgentState currState;
 	private IAgentState pausedState;
 	private boolean newPausedState;
+	private int blockedMoveCount;	// Ticks the agent wanted to move but couldn't.
+
+	private static int totalBlockedMoveCount;
 
 	public Exploration(Explorer agent) {
 		super(agent);
@@ -69,11 +74,33 @@ public class Exploration extends CyclicBehaviour {
 			if (neighborhoodCells != null)
 				sendMessagesHandler(neighborhoodCells);
 		}
-
-		resetDynamicNotWalkable();
 	}
 
+	/**
+	 * Marks the cells occupied by other explorers as not walkable for A*.
+	 * The cells are read once per tick into the occupancy layer shared by
+	 * all the agents. The agent's own cell is left alone since it's always
+	 * the source of its searches.
+	 */
 	private void updateDynamicEnvironment() {
+		int gridSizeX = agent.getGrid().getDimensions().getWidth();
+		int gridSizeY = agent.getGrid().getDimensions().getHeight();
+		OccupancyLayer occupancy = OccupancyLayer.forWorld(agent.getGrid(), gridSizeX, gridSizeY);
+		long tick = (long) RunEnvironment.getInstance().getCurrentSchedule().getTickCount();
+		synchronized (occupancy) {
+			if (!occupancy.isUpToDate(tick))
+				occupancy.update(tick, readOccupiedCells(occupancy));
+		}
+		astar.setOccupied(occupancy.getOccupied());
+	}
+
+	/**
+	 * Returns the cells where an explorer is, unless it's guarding an
+	 * obstacle or it's on the exit.
+	 */
+	private long[] readOccupiedCells(OccupancyLayer occupancy) {
+		long[] occupied = occupancy.createBitSet();
+		int gridSizeX = agent.getGrid().getDimensions().getWidth();
 		for (int row = 0; row < agent.getGrid().getDimensions().getHeight(); row++) {
 			for (int column = 0; column < agent.getGrid().getDimensions().getWidth(); column++) {
 				Iterator<Object> it = agent.getGrid().getObjectsAt(column, row).iterator();
@@ -91,13 +118,10 @@ public class Exploration extends CyclicBehaviour {
 						hasExit = true;
 				}
 				if (hasExplorer && !hasExit && !isObstacleGuardian)
-					astar.addDynamicNotWalkable(new Coordinates(column, row));
+					OccupancyLayer.set(occupied, row * gridSizeX + column);
 			}
 		}
-	}
-
-	private void resetDynamicNotWalkable() {
-		astar.resetDynamicNotWalkable();
+		return occupied;
 	}
 
 	private void receiveMessagesHandler() {
@@ -265,9 +289,32 @@ public class Exploration extends CyclicBehaviour {
 	}
 
 	public boolean moveAgentToCoordinate(Coordinates targetCoordinates) {
-		return agent.moveAgent(targetCoordinates);
-		// TODO: it's possible 2 agents stop moving if they want to go to each
-		// other's place.
+		boolean moved = agent.moveAgent(targetCoordinates);
+		if (!moved)
+			countBlockedMove();
+		return moved;
+	}
+
+	/**
+	 * Counts a tick lost because the agent's way was blocked, either by a
+	 * failed move or by waiting for other agents.
+	 */
+	public void countBlockedMove() {
+		blockedMoveCount++;
+		synchronized (Exploration.class) {
+			totalBlockedMoveCount++;
+		}
+	}
+
+	public int getBlockedMoveCount() {
+		return blockedMoveCount;
+	}
+
+	/**
+	 * Returns the ticks lost to blocked moves by all the agents.
+	 */
+	public static synchronized int getTotalBlockedMoveCount() {
+		return totalBlockedMoveCount;
 	}
 
 	public void discoverCell(UndiscoveredCell cell) {
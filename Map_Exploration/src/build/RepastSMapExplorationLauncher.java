@@ -7,6 +7,9 @@ import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 
 import agents.Explorer;
+import algorithms.astar.AStar;
+import algorithms.astar.PathfindingMetrics;
+import algorithms.astar.PlannerSettings;
 import entities.Entity;
 import entities.Exit;
 import entities.Obstacle;
@@ -21,6 +24,8 @@ import repast.simphony.context.space.graph.NetworkBuilder;
 import repast.simphony.context.space.grid.GridFactory;
 import repast.simphony.context.space.grid.GridFactoryFinder;
 import repast.simphony.engine.environment.RunEnvironment;
+import repast.simphony.engine.schedule.IAction;
+import repast.simphony.engine.schedule.ScheduleParameters;
 import repast.simphony.parameter.Parameters;
 import repast.simphony.space.continuous.ContinuousSpace;
 import repast.simphony.space.continuous.NdPoint;
@@ -33,6 +38,8 @@ import sajas.wrapper.ContainerController;
 import sajas.core.Runtime;
 import utils.Coordinates;
 import utils.ObjectSetups;
+import utils.ObstacleMap;
+import utils.VisionStage;
 
 public class RepastSMapExplorationLauncher extends RepastSLauncher {
 
@@ -81,6 +88,13 @@ public class RepastSMapExplorationLauncher extends RepastSLauncher {
 		VISION_RADIOUS = params.getInteger("visionRadius");
 		COMMUNICATION_LIMIT = params.getInteger("communicationLimit");
 
+		// Planners of every agent's A*.
+		PlannerSettings plannerSettings = new PlannerSettings();
+		plannerSettings.setPlanner(AStar.Planner.valueOf(params.getString("planner")));
+		plannerSettings.setExitPlanner(AStar.ExitPlanner.valueOf(params.getString("exitPlanner")));
+		plannerSettings.setLandmarkHeuristic(params.getBoolean("landmarkHeuristic"));
+		plannerSettings.setFirstMoveTable(params.getBoolean("firstMoveTable"));
+
 		NetworkBuilder<Object> netBuilder = new NetworkBuilder<Object>("Map Exploration Network", context, true);
 		netBuilder.buildNetwork();
 		context.setId("Map Exploration");
@@ -99,12 +113,14 @@ public class RepastSMapExplorationLauncher extends RepastSLauncher {
 		for (int i = 0; i < NUM_AGENTS; i++) {
 			Explorer explorer = new Explorer(space, grid, VISION_RADIOUS, COMMUNICATION_LIMIT,
 					NUM_AGENTS + NUM_SUPER_AGENTS, context);
+			explorer.setPlannerSettings(plannerSettings);
 			explorers.add(explorer);
 			context.add(explorer);
 		}
 
 		for (int i = 0; i < NUM_SUPER_AGENTS; i++) {
 			Explorer explorer = new Explorer(space, grid, VISION_RADIOUS, NUM_AGENTS + NUM_SUPER_AGENTS, context);
+			explorer.setPlannerSettings(plannerSettings);
 			explorers.add(explorer);
 			context.add(explorer);
 		}
@@ -146,6 +162,23 @@ public class RepastSMapExplorationLauncher extends RepastSLauncher {
 			}
 		}
 
+		// Obstacles are only looked up on the grid again when they change.
+		ObstacleMap.build(grid);
+
+		// Updates what the agents that moved see, after all of them acted.
+		RunEnvironment.getInstance().getCurrentSchedule().schedule(
+				ScheduleParameters.createRepeating(1, 1, ScheduleParameters.LAST_PRIORITY), new VisionStage(explorers));
+
+		// Prints where the planning time went once the run ends.
+		PathfindingMetrics.reset();
+		RunEnvironment.getInstance().getCurrentSchedule().schedule(
+				ScheduleParameters.createAtEnd(ScheduleParameters.LAST_PRIORITY), new IAction() {
+					@Override
+					public void execute() {
+						PathfindingMetrics.print(System.out);
+					}
+				});
+
 		return super.build(context);
 	}
 }
\ No newline at end of file
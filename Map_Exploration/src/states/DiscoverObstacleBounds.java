@@ -41,7 +41,7 @@ public class DiscoverObstacleBounds implements IAgentTemporaryState {
     public void execute() {
         if (!pledging) {
             NeighbourPoints pts = new NeighbourPoints(grid.getLocation(agent), NeighbourPoints.Direction.UPWARDS);
-            NeighbourObstacles objs = new NeighbourObstacles(grid, pts);
+            NeighbourObstacles objs = new NeighbourObstacles(grid, agent.getObstacleMap(), pts);
             if (objs.hasObstacle()) {
                 pledge.init();
                 pledging = true;
@@ -58,7 +58,7 @@ public class DiscoverObstacleBounds implements IAgentTemporaryState {
                     newX--;
 
                 pts = new NeighbourPoints(new GridPoint(newX, newY), NeighbourPoints.Direction.UPWARDS);
-                objs = new NeighbourObstacles(grid, pts);
+                objs = new NeighbourObstacles(grid, agent.getObstacleMap(), pts);
                 if (objs.hasObstacle()) {
                     agent.moveAgent(new Coordinates(newX, newY));
                 } else {
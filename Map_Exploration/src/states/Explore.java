@@ -19,7 +19,7 @@ public class Explore implements IAgentState {
 	@Override
 	public void execute() {
 		List<GridCell<Object>> neighborhoodCells = behaviour.getNeighborhoodCells();
-		List<GridCell<Object>> obstacles = Utils.getObstacleCells(neighborhoodCells);
+		List<GridCell<Object>> obstacles = Utils.getObstacleCells(behaviour.getAgent().getObstacleMap(), neighborhoodCells);
 		for (GridCell<Object> obstacle : obstacles) {
 			if (!behaviour.getPledge().alreadyVisited(behaviour.getAgentCoordinates(), obstacle)) {
 				DiscoverObstacleBounds state = new DiscoverObstacleBounds();
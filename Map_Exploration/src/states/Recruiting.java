@@ -1,20 +1,22 @@
 package states;
 
 import java.util.Iterator;
-import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 
 import agents.Explorer;
-import algorithms.astar.Node;
+import algorithms.astar.PathFollower;
+import algorithms.astar.PathSearch;
 import behaviours.Exploration;
 import entities.Obstacle;
 import utils.Coordinates;
 
 public class Recruiting implements IAgentState {
 
+	private static final int SEARCH_BUDGET = 500;	// Nodes expanded per tick while the path isn't found.
+
 	private Exploration behaviour;
-	private List<Node> path;
-	private int pathNode;
+	private PathSearch pathSearch;
+	private PathFollower pathFollower;
 	private Coordinates target;
 	
 	@Override
@@ -38,17 +40,42 @@ public class Recruiting implements IAgentState {
 				break;
 			}
 		}
+		pathFollower = new PathFollower(behaviour.getAStar());
+		// The first move table answers right away, no need to spread a search.
+		if(behaviour.getAStar().hasFirstMoveTable())
+			pathFollower.follow(behaviour.getAgentCoordinates(), target);
+		else
+			pathSearch = behaviour.getAStar().startPathSearch(behaviour.getAgentCoordinates(), target);
 	}
 
 	@Override
 	public void execute() {
-		path = behaviour.getAStar().computePath(behaviour.getAgentCoordinates(), target);
-		if(path != null) {
-			if (!behaviour.getAgent().canMove(path.get(0).getWorldPosition())) {
+		Coordinates current = behaviour.getAgentCoordinates();
+		Coordinates nextStep;
+		if(pathSearch != null) {
+			// Random targets can be unreachable, the search is spread over
+			// ticks while the agent heads to the closest place found so far.
+			pathSearch.resume(SEARCH_BUDGET);
+			if(pathSearch.isFound() && pathSearch.getPathFrom(current) != null) {
+				pathFollower.follow(current, pathSearch.getPathFrom(current));
+				releaseSearch();
+				nextStep = pathFollower.getNextStep(current);
+			} else if(pathSearch.isFinished() && !pathSearch.isFound()) {
+				nextStep = null;
+			} else {
+				nextStep = pathSearch.getNextStep(current);
+				if(nextStep.equals(current))
+					return;
+			}
+		} else
+			nextStep = pathFollower.getNextStep(current);
+
+		if(nextStep != null) {
+			if (!behaviour.getAgent().canMove(nextStep)) {
 				behaviour.changeState(new TravelExit());
 			} else {
-				if(behaviour.moveAgentToCoordinate(path.get(0).getWorldPosition()))
-					if(path.size() == 1)
+				if(behaviour.moveAgentToCoordinate(nextStep))
+					if(pathFollower.isTargetReached(behaviour.getAgentCoordinates()))
 						behaviour.changeState(new TravelExit());
 			}
 		} else {
@@ -58,15 +85,13 @@ public class Recruiting implements IAgentState {
 
 	@Override
 	public void exit() {
-		
+		releaseSearch();
 	}
-	
-	private void printPath() {
-		System.out.println("Path");
-		for(int i = 0; i < path.size(); i++) {
-			System.out.println("   " + (i + 1) + ": " + path.get(i).getWorldPosition().toString());
+
+	private void releaseSearch() {
+		if(pathSearch != null) {
+			pathSearch.release();
+			pathSearch = null;
 		}
-		System.out.println("End path");
-		System.out.println();
 	}
 }
@@ -1,10 +1,9 @@
 package states;
 
 import java.util.Iterator;
-import java.util.List;
 
 import agents.Explorer;
-import algorithms.astar.Node;
+import algorithms.astar.AStar;
 import behaviours.Exploration;
 import communication.IndividualMessage;
 import utils.Coordinates;
@@ -13,7 +12,6 @@ import utils.Utils.MessageType;
 public class TravelExit implements IAgentState {
 
 	private Exploration behaviour;
-	private List<Node> path;
 	private int pathNode;
 	private Coordinates exit;
 	
@@ -21,19 +19,23 @@ public class TravelExit implements IAgentState {
 	public void enter(Exploration behaviour) {
 		this.behaviour = behaviour;
 		exit = behaviour.getAgent().getMatrix().getExit();
+		// Agents crowd around the exit, their moves can be planned together.
+		if(behaviour.getAStar().getExitPlanner() == AStar.ExitPlanner.COOPERATIVE)
+			behaviour.getAStar().setCooperative(true);
 	}
 
 	@Override
 	public void execute() {
-		path = behaviour.getAStar().getPathToExit();
-
-		if(path == null || path.size() == 0) {
+		Coordinates target = behaviour.getAgentCoordinates();
+		if(!target.equals(exit)) {
+			Coordinates nextStep = behaviour.getAStar().getNextStepToExit();
+			// Null if the exit can't be reached for now.
+			if(nextStep == null || nextStep.equals(target))
+				behaviour.countBlockedMove();
+			else
+				behaviour.moveAgentToCoordinate(nextStep);
+		} else {
 			boolean becameMasterAgent = true;
-			Coordinates target = behaviour.getAgentCoordinates();
-			if(!target.equals(exit)) {
-				// Couldn't find path to exit
-				return;
-			}
 			Iterator it = behaviour.getAgent().getGrid().getObjectsAt(target.getX(), target.getY()).iterator();
 			while(it.hasNext()) {
 				Object obj = it.next();
@@ -53,11 +55,11 @@ public class TravelExit implements IAgentState {
 				//System.out.println(behaviour.getAgent().getLocalName() + " is guarding the exit.");
 				behaviour.changeState(new Guarding());
 			}
-		} else behaviour.moveAgentToCoordinate(path.get(0).getWorldPosition());
+		}
 	}
 
 	@Override
 	public void exit() {
-		
+		behaviour.getAStar().setCooperative(false);
 	}
 }
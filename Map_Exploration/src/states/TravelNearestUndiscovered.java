@@ -2,19 +2,21 @@ package states;
 
 import java.util.List;
 
-import algorithms.astar.Node;
+import algorithms.astar.PathFollower;
 import behaviours.Exploration;
 import repast.simphony.query.space.grid.GridCell;
+import utils.Coordinates;
 import utils.Utils;
 
 public class TravelNearestUndiscovered implements IAgentState {
 
 	private Exploration behaviour;
-	private List<Node> path;
+	private PathFollower pathFollower;
 
 	@Override
 	public void enter(Exploration behaviour) {
 		this.behaviour = behaviour;
+		pathFollower = new PathFollower(behaviour.getAStar());
 		if (!behaviour.getAgent().getMatrix().hasUndiscoveredCells()) {
 			System.out.println("Map is fully explored.");
 			behaviour.changeState(new TravelExit());
@@ -24,7 +26,7 @@ public class TravelNearestUndiscovered implements IAgentState {
 	@Override
 	public void execute() {
 		List<GridCell<Object>> neighborhoodCells = behaviour.getNeighborhoodCells();
-		List<GridCell<Object>> obstacles = Utils.getObstacleCells(neighborhoodCells);
+		List<GridCell<Object>> obstacles = Utils.getObstacleCells(behaviour.getAgent().getObstacleMap(), neighborhoodCells);
 		for (GridCell<Object> obstacle : obstacles) {
 			if (!behaviour.getPledge().alreadyVisited(behaviour.getAgentCoordinates(), obstacle)) {
 				DiscoverObstacleBounds state = new DiscoverObstacleBounds();
@@ -34,28 +36,35 @@ public class TravelNearestUndiscovered implements IAgentState {
 			}
 		}
 		
-		path = behaviour.getAStar().getNearestUndiscoveredPlace(behaviour.getAgentPoint());
-		if (path != null) {
-			//printPath();
-			behaviour.moveAgentToCoordinate(path.get(0).getWorldPosition());
-			if(path.size() == 1)
+		// The path is kept while its target is still undiscovered.
+		Coordinates nextStep = null;
+		if (pathFollower.hasPath() && isUndiscovered(pathFollower.getTarget()))
+			nextStep = pathFollower.getNextStep(behaviour.getAgentCoordinates());
+		if (nextStep == null) {
+			pathFollower.follow(behaviour.getAgentCoordinates(),
+					behaviour.getAStar().getNearestUndiscoveredPlace(behaviour.getAgentPoint()));
+			nextStep = pathFollower.getNextStep(behaviour.getAgentCoordinates());
+		}
+
+		if (nextStep != null) {
+			boolean lastStep = pathFollower.getRemainingSteps() == 1;
+			behaviour.moveAgentToCoordinate(nextStep);
+			if(lastStep)
 				behaviour.changeState(new Explore());
 		} else {
 			behaviour.changeState(new TravelToObstacle());
 		}
 	}
 
+	private boolean isUndiscovered(Coordinates worldPosition) {
+		Coordinates matrixPosition = Utils.matrixFromWorldPoint(worldPosition,
+				behaviour.getAgent().getGrid().getDimensions().getHeight());
+		return behaviour.getAgent().getMatrix().getValue(matrixPosition.getY(),
+				matrixPosition.getX()) == Utils.CODE_UNDISCOVERED;
+	}
+
 	@Override
 	public void exit() {
 		
 	}
-	
-	private void printPath() {
-		System.out.println("Path");
-		for(int i = 0; i < path.size(); i++) {
-			System.out.println("   " + (i + 1) + ": " + path.get(i).getWorldPosition().toString());
-		}
-		System.out.println("End path");
-		System.out.println();
-	}
 }
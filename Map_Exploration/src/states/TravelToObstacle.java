@@ -1,10 +1,9 @@
 package states;
 
 import java.util.Iterator;
-import java.util.List;
 
 import agents.Explorer;
-import algorithms.astar.Node;
+import algorithms.astar.PathFollower;
 import behaviours.Exploration;
 import communication.IndividualMessage;
 import repast.simphony.space.grid.GridPoint;
@@ -13,29 +12,27 @@ import utils.Utils.MessageType;
 
 public class TravelToObstacle implements IAgentState {
 	private Exploration behaviour;
-	private List<Node> path;
-	private int pathNode;
+	private PathFollower pathFollower;
 
 	@Override
 	public void enter(Exploration behaviour) {
 		this.behaviour = behaviour;
-		path = behaviour.getAStar().getNearestObstacle(behaviour.getAgentPoint());
+		pathFollower = new PathFollower(behaviour.getAStar());
+		pathFollower.follow(behaviour.getAgentCoordinates(),
+				behaviour.getAStar().getNearestObstacle(behaviour.getAgentPoint()));
 
-		if (path == null) {
+		if (!pathFollower.hasPath()) {
 			behaviour.changeState(new TravelNearestUndiscovered());
 		}
-		pathNode = 0;
 	}
 
 	@Override
 	public void execute() {
-		if (path != null) {
-			Coordinates target = new Coordinates(path.get(pathNode).getWorldPosition().getX(),
-					path.get(pathNode).getWorldPosition().getY());
-			if (behaviour.moveAgentToCoordinate(target))
-				pathNode++;
+		Coordinates target = pathFollower.getNextStep(behaviour.getAgentCoordinates());
+		if (target != null) {
+			behaviour.moveAgentToCoordinate(target);
 
-			if (pathNode == path.size()) {
+			if (pathFollower.isTargetReached(behaviour.getAgentCoordinates())) {
 				boolean becameGaurdianAgent = true;
 				target = behaviour.getAgentCoordinates();
 				Iterator it = behaviour.getAgent().getGrid().getObjectsAt(target.getX(), target.getY()).iterator();
@@ -56,7 +53,7 @@ public class TravelToObstacle implements IAgentState {
 					behaviour.changeState(new ObstacleGuardian());
 				}
 
-				path = null;
+				pathFollower.clear();
 			}
 		} else
 			behaviour.changeState(new TravelNearestUndiscovered());
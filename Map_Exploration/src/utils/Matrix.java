@@ -6,17 +6,13 @@ import entities.DiscoveredCell;
 import entities.Exit;
 import entities.Obstacle;
 import entities.UndiscoveredCell;
-import repast.simphony.query.space.grid.GridCell;
-import repast.simphony.query.space.grid.GridCellNgh;
 import repast.simphony.space.grid.Grid;
 import repast.simphony.space.grid.GridPoint;
 import states.TravelExit;
-import utils.raytrace.RayTracing;
-import utils.raytrace.TracedPath;
+import utils.raytrace.ShadowCasting;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 public class Matrix implements Serializable {
@@ -27,6 +23,20 @@ public class Matrix implements Serializable {
 	private String name;
 	private Coordinates exitWorldLocation;
 
+	// Cells read on the last update, one bit per world cell (y * width + x),
+	// obstacles excluded. Not sent with the matrix.
+	private transient long[] seenCells;
+	private transient long[] nextSeenCells;
+	private transient Coordinates lastCenter;
+	private transient int lastRadius;
+
+	// Cells visible from visibleCenter (y * width + x), in the order
+	// ShadowCasting visits them, until they're applied.
+	private transient int[] visibleCells;
+	private transient int visibleCount;
+	private transient Coordinates visibleCenter;
+	private transient int visibleRadius;
+
 	public Matrix(int rows, int columns, String name) {
 		this.matrix = new int[columns][rows];
 
@@ -74,70 +84,162 @@ public class Matrix implements Serializable {
 		System.out.println("\n");
 	}
 
+	/**
+	 * Updates the matrix with every cell the agent sees from the center, as
+	 * given by ShadowCasting. Visible obstacles are also set to not walkable
+	 * for A*.
+	 * 
+	 * @param behaviour The explorer behaviour to discover cells and change to TravelExit() if it sees the exit
+	 * @param grid The grid to get the objects from
+	 * @param center Position the agent sees from
+	 * @param radius The vision radius
+	 */
 	public void updateMatrix(Exploration behaviour, Grid<Object> grid, Coordinates center, int radius) {
-		GridPoint centerPoint = new GridPoint(center.getX(), center.getY());
-		GridCellNgh<Object> nghCreator = new GridCellNgh<Object>(grid, centerPoint, Object.class, radius, radius);
-		List<GridCell<Object>> gridCells = nghCreator.getNeighborhood(true);
-
-		for (GridCell<Object> gridCell : gridCells) {
-			Coordinates targetCoordinates = Coordinates.FromGridPoint(gridCell.getPoint());
-			TracedPath tracedPath = RayTracing.trace(grid, center, targetCoordinates, true);
-			if (tracedPath.getHitObstacle() != null) {
-				Coordinates matrixCoordinates = Utils.matrixFromWorldPoint(tracedPath.getHitCoordinates().toGridPoint(), getNumRows());
-				this.setValue(matrixCoordinates.getY(), matrixCoordinates.getX(), tracedPath.getHitObstacle().getCode());
-				// Setting the nodes to not walkable for A*.
-				behaviour.getAStar().setNodeWalkable(tracedPath.getHitCoordinates(), false);
-				/*for (Coordinates coordinates : tracedPath.getTraveled()) {
-					// TODO Update view
-				}*/
-				continue;
-			}
+		computeVisibleCells(ObstacleMap.forGrid(grid), center, radius);
+		applyVisibleCells(behaviour, grid, false);
+	}
 
-			Iterator<Object> it = gridCell.items().iterator();
-			/*
-			 * if (!it.hasNext()) { Coordinates matrixCoordinates =
-			 * Utils.matrixFromWorldPoint(gridCell.getPoint(), getNumRows());
-			 * this.setValue(matrixCoordinates.getY(), matrixCoordinates.getX(),
-			 * 1); } else {
-			 */
-			int value = 0;
-			// If the cell has objects
-			while (it.hasNext()) {
-				Object obj = it.next();
-				// If the object found is an Entity use it's value
-				if (obj instanceof Exit) {
-					Exit exit = (Exit) obj;
-					if (exit.getCode() > value)
-						value = exit.getCode();
-				} else if (obj instanceof UndiscoveredCell) {
-					UndiscoveredCell cell = (UndiscoveredCell) obj;
-					behaviour.discoverCell(cell);
-					if (utils.Utils.CODE_DISCOVERED > value)
-						value = utils.Utils.CODE_DISCOVERED;
-				} else if (obj instanceof DiscoveredCell) {
-					DiscoveredCell cell = (DiscoveredCell) obj;
-					if (cell.getCode() > value)
-						value = cell.getCode();
-				} else if (obj instanceof Explorer) {
-					if (utils.Utils.CODE_DISCOVERED > value)
-						value = utils.Utils.CODE_DISCOVERED;
-				} else
-					System.err.println(
-							"Matrix: Unidentified object of class '" + obj.getClass() + "', could't update matrix!");
+	/**
+	 * First half of an update, finds the cells visible from the center
+	 * without changing the matrix. Only the obstacles are read, so the
+	 * matrices of different agents can compute them at the same time.
+	 * 
+	 * @param obstacles The obstacles of the world
+	 * @param center Position the agent sees from
+	 * @param radius The vision radius
+	 */
+	public void computeVisibleCells(ObstacleMap obstacles, Coordinates center, int radius) {
+		final int width = obstacles.getWidth();
+		int size = 2 * radius + 1;
+		if (visibleCells == null || visibleCells.length < size * size)
+			visibleCells = new int[size * size];
+		final int[] visible = visibleCells;
+		visibleCount = 0;
+
+		ShadowCasting.compute(obstacles, center, radius, new ShadowCasting.Visitor() {
+			@Override
+			public void visit(int x, int y) {
+				visible[visibleCount++] = y * width + x;
 			}
-			// }
-			// Updates the matrix with the new value
-			Coordinates matrixCoordinates = Utils.matrixFromWorldPoint(gridCell.getPoint(), getNumRows());
-			this.setValue(matrixCoordinates.getY(), matrixCoordinates.getX(), value);
-
-			// If we're near the exit, go to exit, to see if this agent is
-			// going to be a guardian or a recruiter.
-			if (value == Utils.CODE_EXIT)
-				behaviour.changeState(new TravelExit());
+		});
+		visibleCenter = center;
+		visibleRadius = radius;
+	}
+
+	/**
+	 * Second half of an update, reads the cells found by the last
+	 * computeVisibleCells into the matrix.
+	 * When incremental and the agent moved at most one cell since the last
+	 * update, only the cells that weren't seen then (the leading edge and
+	 * the ones coming out of the obstacles' shadows) and the obstacles are
+	 * read, the other cells keep the value they got then. After a longer
+	 * move or a change of radius every visible cell is read. Doors removed
+	 * since then still need a call to updateMatrix.
+	 * 
+	 * @param behaviour The explorer behaviour to discover cells and change to TravelExit() if it sees the exit
+	 * @param grid The grid to get the objects from
+	 * @param incremental Skips the cells seen on the last update after a one cell move
+	 */
+	public void applyVisibleCells(Exploration behaviour, Grid<Object> grid, boolean incremental) {
+		Coordinates center = visibleCenter;
+		int radius = visibleRadius;
+		// Nothing was computed since the last update.
+		if (center == null)
+			return;
+		if (incremental) {
+			incremental = lastCenter != null && radius == lastRadius
+					&& Math.abs(center.getX() - lastCenter.getX()) <= 1 && Math.abs(center.getY() - lastCenter.getY()) <= 1;
+		}
+
+		int width = grid.getDimensions().getWidth();
+		int words = (width * grid.getDimensions().getHeight() + 63) / 64;
+		if (seenCells == null || seenCells.length != words) {
+			seenCells = new long[words];
+			nextSeenCells = new long[words];
+			incremental = false;
+		}
+		long[] previous = incremental ? seenCells : null;
+		long[] seen = nextSeenCells;
+		for (int i = 0; i < seen.length; i++)
+			seen[i] = 0;
+
+		for (int i = 0; i < visibleCount; i++) {
+			int index = visibleCells[i];
+			int x = index % width;
+			int y = index / width;
+			if (previous != null && (previous[index >>> 6] & (1L << index)) != 0) {
+				seen[index >>> 6] |= 1L << index;
+				// Seeing the exit still sends the agent there, as on the
+				// update that read it.
+				if (exitWorldLocation != null && exitWorldLocation.getX() == x && exitWorldLocation.getY() == y)
+					behaviour.changeState(new TravelExit());
+			} else if (updateCell(behaviour, grid, x, y))
+				seen[index >>> 6] |= 1L << index;
 		}
+		visibleCount = 0;
+		visibleCenter = null;
+
+		nextSeenCells = seenCells;
+		seenCells = seen;
+		lastCenter = center;
+		lastRadius = radius;
 		//printMatrix();
 	}
 
+	/**
+	 * Reads the objects in a visible cell into the matrix.
+	 * 
+	 * @return false if the cell has an obstacle, which may be removed later.
+	 */
+	private boolean updateCell(Exploration behaviour, Grid<Object> grid, int x, int y) {
+		Coordinates matrixCoordinates = Utils.matrixFromWorldPoint(new GridPoint(x, y), getNumRows());
+		// Copied since discovering a cell changes the objects in it.
+		List<Object> objects = new ArrayList<>();
+		for (Object obj : grid.getObjectsAt(x, y)) {
+			objects.add(obj);
+			if (obj instanceof Obstacle) {
+				Obstacle obstacle = (Obstacle) obj;
+				this.setValue(matrixCoordinates.getY(), matrixCoordinates.getX(), obstacle.getCode());
+				// Setting the nodes to not walkable for A*.
+				behaviour.getAStar().setNodeWalkable(new Coordinates(x, y), false);
+				return false;
+			}
+		}
+
+		int value = 0;
+		// If the cell has objects
+		for (Object obj : objects) {
+			// If the object found is an Entity use it's value
+			if (obj instanceof Exit) {
+				Exit exit = (Exit) obj;
+				if (exit.getCode() > value)
+					value = exit.getCode();
+			} else if (obj instanceof UndiscoveredCell) {
+				UndiscoveredCell cell = (UndiscoveredCell) obj;
+				behaviour.discoverCell(cell);
+				if (utils.Utils.CODE_DISCOVERED > value)
+					value = utils.Utils.CODE_DISCOVERED;
+			} else if (obj instanceof DiscoveredCell) {
+				DiscoveredCell cell = (DiscoveredCell) obj;
+				if (cell.getCode() > value)
+					value = cell.getCode();
+			} else if (obj instanceof Explorer) {
+				if (utils.Utils.CODE_DISCOVERED > value)
+					value = utils.Utils.CODE_DISCOVERED;
+			} else
+				System.err.println(
+						"Matrix: Unidentified object of class '" + obj.getClass() + "', could't update matrix!");
+		}
+		// Updates the matrix with the new value
+		this.setValue(matrixCoordinates.getY(), matrixCoordinates.getX(), value);
+
+		// If we're near the exit, go to exit, to see if this agent is
+		// going to be a guardian or a recruiter.
+		if (value == Utils.CODE_EXIT)
+			behaviour.changeState(new TravelExit());
+		return true;
+	}
+
 	public boolean hasUndiscoveredCells() {
 		return undiscoveredCells > 0;
 	}
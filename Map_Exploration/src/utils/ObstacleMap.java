@@ -0,0 +1,118 @@
+package utils;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import entities.Obstacle;
+import repast.simphony.space.grid.Grid;
+
+/**
+ * Obstacles of a world kept as one byte per cell, so checking if a cell can
+ * be walked or seen through is an array lookup instead of iterating over the
+ * objects of the grid. It's built from the grid once the world is set up and
+ * has to be updated whenever an obstacle is added or removed.
+ * Cells outside the world have no obstacle, like an empty grid cell.
+ * The map of a grid is never replaced, so it can be looked up once and kept.
+ */
+public class ObstacleMap {
+
+	private static final byte BLOCKED = 1;	// Has an obstacle.
+	private static final byte OPAQUE = 2;	// Has an obstacle that isn't see through.
+
+	private static final Map<Object, ObstacleMap> maps = new WeakHashMap<Object, ObstacleMap>();
+
+	private final int width;
+	private final int height;
+	private final byte[] cells;	// Indexed by y * width + x.
+
+	private ObstacleMap(Grid<?> grid) {
+		width = grid.getDimensions().getWidth();
+		height = grid.getDimensions().getHeight();
+		cells = new byte[width * height];
+		updateAll(grid);
+	}
+
+	/**
+	 * Builds the map of a world from the obstacles currently on its grid,
+	 * reading them again into the existing map if there is one. Should be
+	 * called once the obstacles are placed.
+	 * @param grid the world's grid, used as key.
+	 * @return map shared by everything using the grid.
+	 */
+	public static synchronized ObstacleMap build(Grid<?> grid) {
+		ObstacleMap map = maps.get(grid);
+		if (map == null) {
+			map = new ObstacleMap(grid);
+			maps.put(grid, map);
+		} else
+			map.updateAll(grid);
+		return map;
+	}
+
+	/**
+	 * Returns the map of a world, building it the first time. Meant to be
+	 * called once by each user and kept, not on every check.
+	 * @param grid the world's grid, used as key.
+	 * @return map shared by everything using the grid.
+	 */
+	public static synchronized ObstacleMap forGrid(Grid<?> grid) {
+		ObstacleMap map = maps.get(grid);
+		if (map == null)
+			map = build(grid);
+		return map;
+	}
+
+	private void updateAll(Grid<?> grid) {
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++)
+				update(grid, x, y);
+		}
+	}
+
+	/**
+	 * Reads the obstacles of a cell from the grid again. Nothing is done if
+	 * the cell is outside the world.
+	 * @param grid the world's grid.
+	 * @param x
+	 * @param y
+	 */
+	public void update(Grid<?> grid, int x, int y) {
+		if (!isInside(x, y))
+			return;
+		byte flags = 0;
+		for (Object obj : grid.getObjectsAt(x, y)) {
+			if (obj instanceof Obstacle) {
+				flags |= BLOCKED;
+				if (!((Obstacle) obj).isSeeThrough())
+					flags |= OPAQUE;
+			}
+		}
+		cells[y * width + x] = flags;
+	}
+
+	public boolean isInside(int x, int y) {
+		return x >= 0 && x < width && y >= 0 && y < height;
+	}
+
+	/**
+	 * @return true if the cell has an obstacle.
+	 */
+	public boolean isBlocked(int x, int y) {
+		return isInside(x, y) && (cells[y * width + x] & BLOCKED) != 0;
+	}
+
+	/**
+	 * @return true if the cell has an obstacle that isn't see through.
+	 */
+	public boolean isOpaque(int x, int y) {
+		return isInside(x, y) && (cells[y * width + x] & OPAQUE) != 0;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+}
@@ -101,12 +101,11 @@ public class Utils {
 		return false;
 	}
 
-	public static List<GridCell<Object>> getObstacleCells(List<GridCell<Object>> cells) {
+	public static List<GridCell<Object>> getObstacleCells(ObstacleMap obstacles, List<GridCell<Object>> cells) {
 		List<GridCell<Object>> obstacleCells = new ArrayList<>();
 		for (GridCell<Object> gridCell : cells) {
-			Iterator it = gridCell.items().iterator();
-			while (it.hasNext())
-				if (it.next() instanceof Obstacle) obstacleCells.add(gridCell);
+			if (obstacles.isBlocked(gridCell.getPoint().getX(), gridCell.getPoint().getY()))
+				obstacleCells.add(gridCell);
 		}
 		return obstacleCells;
 	}
@@ -0,0 +1,75 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import agents.Explorer;
+import repast.simphony.engine.schedule.IAction;
+
+/**
+ * Updates the matrices of the agents that moved, once per tick after all of
+ * them acted. A field of view only depends on the obstacles and where the
+ * agent is, so they're all computed at the same time on a pool of worker
+ * threads. The matrices are then updated one agent at a time, since that
+ * discovers cells on the shared grid.
+ */
+public class VisionStage implements IAction {
+
+	private static ForkJoinPool pool;
+
+	private final List<Explorer> explorers;
+	private final List<Explorer> movedExplorers = new ArrayList<Explorer>();
+
+	public VisionStage(List<Explorer> explorers) {
+		this.explorers = explorers;
+	}
+
+	static synchronized ForkJoinPool getPool() {
+		if (pool == null)
+			pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		return pool;
+	}
+
+	@Override
+	public void execute() {
+		movedExplorers.clear();
+		for (Explorer explorer : explorers) {
+			if (explorer.hasPendingVision())
+				movedExplorers.add(explorer);
+		}
+
+		// Each task computes every taskCount-th agent.
+		int taskCount = Math.min(movedExplorers.size(), Runtime.getRuntime().availableProcessors() * 4);
+		if (taskCount <= 1 || Runtime.getRuntime().availableProcessors() == 1) {
+			for (Explorer explorer : movedExplorers)
+				explorer.computeVision();
+		} else {
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(taskCount);
+			for (int task = 0; task < taskCount; task++) {
+				final int firstExplorer = task;
+				final int explorerStep = taskCount;
+				tasks.add(new Callable<Void>() {
+					@Override
+					public Void call() {
+						for (int explorer = firstExplorer; explorer < movedExplorers.size(); explorer += explorerStep)
+							movedExplorers.get(explorer).computeVision();
+						return null;
+					}
+				});
+			}
+			try {
+				for (Future<Void> task : getPool().invokeAll(tasks))
+					task.get();
+			} catch (InterruptedException | ExecutionException e) {
+				throw new IllegalStateException("Vision stage failed", e);
+			}
+		}
+
+		for (Explorer explorer : movedExplorers)
+			explorer.applyVision();
+	}
+}
@@ -0,0 +1,42 @@
+package utils.raytrace;
+
+import entities.Obstacle;
+
+/**
+ * Result of a ray owned by the caller, so it can be reused for every ray
+ * instead of allocating one per trace.
+ */
+public class RayHit {
+    private boolean hit;
+    private int x;
+    private int y;
+    private Obstacle obstacle;
+
+    public void reset() {
+        hit = false;
+        obstacle = null;
+    }
+
+    void set(int x, int y, Obstacle obstacle) {
+        this.hit = true;
+        this.x = x;
+        this.y = y;
+        this.obstacle = obstacle;
+    }
+
+    public boolean isHit() {
+        return hit;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public Obstacle getObstacle() {
+        return obstacle;
+    }
+}
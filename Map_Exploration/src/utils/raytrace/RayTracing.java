@@ -3,9 +3,17 @@ package utils.raytrace;
 import entities.Obstacle;
 import repast.simphony.space.grid.Grid;
 import utils.Coordinates;
+import utils.ObstacleMap;
 
 public class RayTracing {
-	
+
+    /**
+     * Receives the cells a ray goes through before it hits an obstacle.
+     */
+    public interface Visitor {
+        void visit(int x, int y);
+    }
+
     /**
      * Casts a ray against the first object it collides.
      * @param grid The grid to get the objects from
@@ -14,37 +22,65 @@ public class RayTracing {
      * @param onlyOpaque Only checks collision with opaque objects
      * @return Obstacle Returns the first obstacle it hits or null
      */
-    public static TracedPath trace(Grid grid, Coordinates origin, Coordinates target, boolean onlyOpaque) {
-        int dx = Math.abs(target.getX() - origin.getX());
-        int dy = Math.abs(target.getY() - origin.getY());
+    public static TracedPath trace(final Grid grid, Coordinates origin, Coordinates target, boolean onlyOpaque) {
+        final TracedPath tracedPath = new TracedPath();
+        RayHit hit = new RayHit();
+        ObstacleMap obstacles = ObstacleMap.forGrid(grid);
+        trace(grid, obstacles, origin.getX(), origin.getY(), target.getX(), target.getY(), onlyOpaque, new Visitor() {
+            @Override
+            public void visit(int x, int y) {
+                // Only cells with objects are kept as traveled.
+                if (grid.getObjectsAt(x, y).iterator().hasNext())
+                    tracedPath.addTraveled(new Coordinates(x, y));
+            }
+        }, hit);
+        if (hit.isHit())
+            tracedPath.setHit(new Coordinates(hit.getX(), hit.getY()), hit.getObstacle());
+        return tracedPath;
+    }
 
-        int x_inc = (target.getX() > origin.getX()) ? 1 : -1;
-        int y_inc = (target.getY() > origin.getY()) ? 1 : -1;
+    /**
+     * Casts a ray against the first object it collides, without allocating.
+     * @param grid The grid to get the objects from
+     * @param obstacles The obstacles of the grid, kept by the caller
+     * @param originX The origin to cast the ray
+     * @param originY
+     * @param targetX The destination coordinates
+     * @param targetY
+     * @param onlyOpaque Only checks collision with opaque objects
+     * @param visitor Receives the cells the ray goes through before the hit, or null
+     * @param hit Written with the first obstacle it hits, reset otherwise
+     * @return true if it hits an obstacle
+     */
+    public static boolean trace(Grid<?> grid, ObstacleMap obstacles, int originX, int originY, int targetX,
+            int targetY, boolean onlyOpaque, Visitor visitor, RayHit hit) {
+        int dx = Math.abs(targetX - originX);
+        int dy = Math.abs(targetY - originY);
+
+        int x_inc = (targetX > originX) ? 1 : -1;
+        int y_inc = (targetY > originY) ? 1 : -1;
         int error = dx - dy;
         dx = dx * 2;
         dy = dy * 2;
 
-        int x = origin.getX();
-        int y = origin.getY();
-        TracedPath tracedPath = new TracedPath();
+        int x = originX;
+        int y = originY;
+        hit.reset();
         for (int n = 1 + dx + dy; n > 0; n--) {
-            if (x < 0 || x >= grid.getDimensions().getWidth() || y < 0 || y >= grid.getDimensions().getHeight())
-                continue;
-            Iterable<Object> objs = grid.getObjectsAt(x, y);
-            for (Object obj : objs) {
-                if (obj != null && obj instanceof Obstacle) {
-                    Obstacle obstacle = (Obstacle) obj;
-                    if (!onlyOpaque) {
-                        tracedPath.setHit(new Coordinates(x, y), obstacle);
-                        return tracedPath;
-                    }
-                    else if (!obstacle.isSeeThrough()) {
-                        tracedPath.setHit(new Coordinates(x, y), obstacle);
-                        return tracedPath;
+            // The ray stops moving once it leaves the grid.
+            if (!obstacles.isInside(x, y))
+                return false;
+            // The grid is only read to get the obstacle that was hit.
+            if (onlyOpaque ? obstacles.isOpaque(x, y) : obstacles.isBlocked(x, y)) {
+                for (Object obj : grid.getObjectsAt(x, y)) {
+                    if (obj instanceof Obstacle && (!onlyOpaque || !((Obstacle) obj).isSeeThrough())) {
+                        hit.set(x, y, (Obstacle) obj);
+                        return true;
                     }
                 }
-                tracedPath.addTraveled(new Coordinates(x, y));
             }
+            if (visitor != null)
+                visitor.visit(x, y);
 
             if (error > 0) {
                 x += x_inc;
@@ -54,6 +90,6 @@ public class RayTracing {
                 error += dx;
             }
         }
-        return tracedPath;
+        return false;
     }
 }
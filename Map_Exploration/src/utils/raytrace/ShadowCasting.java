@@ -0,0 +1,266 @@
+package utils.raytrace;
+
+import utils.Coordinates;
+import utils.ObstacleMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Field of view computed with symmetric shadowcasting. The square around the
+ * origin is scanned one quadrant at a time, row by row away from the origin,
+ * keeping the ranges of slopes that are still lit, so every cell is looked at
+ * once instead of casting a ray to each of them. Floor cells are visible when
+ * their center is lit, which makes visibility symmetric: if A sees B, B sees
+ * A. Obstacle cells are visible when any part of them is lit.
+ *
+ * The geometry only depends on the radius, so it's precomputed once per
+ * radius and shared (see forRadius()). Every slope a row can be cut at is
+ * ranked in order, and the cells of a quadrant, in scan order, keep the
+ * ranks of their edges and center. A computation is then a pass over flat
+ * int arrays that only compares ranks, without allocating.
+ */
+public class ShadowCasting {
+
+    /**
+     * Receives the cells that are visible from the origin, each one once.
+     */
+    public interface Visitor {
+        void visit(int x, int y);
+    }
+
+    // Cell (column, depth) of each quadrant in world offsets, north, east,
+    // south and west.
+    private static final int[] COLUMN_X = { 1, 0, -1, 0 };
+    private static final int[] COLUMN_Y = { 0, -1, 0, 1 };
+    private static final int[] DEPTH_X = { 0, 1, 0, -1 };
+    private static final int[] DEPTH_Y = { 1, 0, -1, 0 };
+
+    private static final Map<Integer, ShadowCasting> templates = new HashMap<>();
+
+    private final int radius;
+    private final int[] rowStarts;	// Index of the first cell of each depth, radius + 2 entries.
+    private final int[] leftEdges;	// Slope rank of each cell's left edge, (2 * column - 1) / (2 * depth).
+    private final int[] centers;	// Slope rank of each cell's center, column / depth.
+    private final int[] numerators;	// Slope of each rank, numerator / denominator.
+    private final int[] denominators;
+    private final int firstSlope;	// Slope rank of -1.
+    private final int lastSlope;	// Slope rank of 1.
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    /**
+     * Lit ranges of slopes and visited diagonals reused by the computations
+     * of one thread. A row has at most depth + 1 lit ranges.
+     */
+    private class Scratch {
+        private int[] starts = new int[radius + 2];
+        private int[] ends = new int[radius + 2];
+        private int[] nextStarts = new int[radius + 2];
+        private int[] nextEnds = new int[radius + 2];
+        private boolean[] visitedDiagonals = new boolean[4 * (radius + 1)];	// Shared by 2 quadrants.
+    }
+
+    private ShadowCasting(int radius) {
+        this.radius = radius;
+
+        // Slopes as fractions, ranked in order. Equal slopes share a rank.
+        List<int[]> slopes = new ArrayList<>();
+        slopes.add(new int[] { -1, 1 });
+        slopes.add(new int[] { 1, 1 });
+        for (int depth = 1; depth <= radius; depth++) {
+            for (int column = -depth; column <= depth; column++) {
+                slopes.add(new int[] { 2 * column - 1, 2 * depth });
+                slopes.add(new int[] { column, depth });
+            }
+            slopes.add(new int[] { 2 * depth + 1, 2 * depth });
+        }
+        Collections.sort(slopes, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] slope, int[] otherSlope) {
+                return Integer.compare(slope[0] * otherSlope[1], otherSlope[0] * slope[1]);
+            }
+        });
+        Map<Long, Integer> ranks = new HashMap<>();
+        numerators = new int[slopes.size()];
+        denominators = new int[slopes.size()];
+        int rank = -1;
+        int[] previous = null;
+        for (int[] slope : slopes) {
+            if (previous == null || slope[0] * previous[1] != previous[0] * slope[1]) {
+                rank++;
+                numerators[rank] = slope[0];
+                denominators[rank] = slope[1];
+            }
+            ranks.put(getKey(slope[0], slope[1]), rank);
+            previous = slope;
+        }
+        firstSlope = ranks.get(getKey(-1, 1));
+        lastSlope = ranks.get(getKey(1, 1));
+
+        int cells = (radius + 1) * (radius + 1) - 1;
+        rowStarts = new int[radius + 2];
+        leftEdges = new int[cells];
+        centers = new int[cells];
+        int cell = 0;
+        for (int depth = 1; depth <= radius; depth++) {
+            rowStarts[depth] = cell;
+            for (int column = -depth; column <= depth; column++) {
+                leftEdges[cell] = ranks.get(getKey(2 * column - 1, 2 * depth));
+                centers[cell] = ranks.get(getKey(column, depth));
+                cell++;
+            }
+        }
+        rowStarts[radius + 1] = cell;
+    }
+
+    /**
+     * Returns the precomputed field of view for a vision radius, shared by
+     * every agent with that radius.
+     * @param radius The vision radius
+     * @return Field of view to compute from any origin
+     */
+    public static ShadowCasting forRadius(int radius) {
+        synchronized (templates) {
+            ShadowCasting template = templates.get(radius);
+            if (template == null) {
+                template = new ShadowCasting(radius);
+                templates.put(radius, template);
+            }
+            return template;
+        }
+    }
+
+    /**
+     * Visits every cell visible from the origin, the origin included, that
+     * is at most radius cells away in each axis. Obstacles block the view
+     * unless they're see through.
+     * @param obstacles The obstacles of the world, kept by the caller
+     * @param origin The position the view is computed from
+     * @param radius The vision radius
+     * @param visitor Receives the visible cells
+     */
+    public static void compute(ObstacleMap obstacles, Coordinates origin, int radius, Visitor visitor) {
+        forRadius(radius).compute(obstacles, origin, visitor);
+    }
+
+    /**
+     * Same as compute(ObstacleMap, Coordinates, int, Visitor) with this
+     * template's radius.
+     */
+    public void compute(ObstacleMap obstacles, Coordinates origin, Visitor visitor) {
+        Scratch scratch = this.scratch.get();
+        boolean[] visitedDiagonals = scratch.visitedDiagonals;
+        int originX = origin.getX();
+        int originY = origin.getY();
+        int width = obstacles.getWidth();
+        int height = obstacles.getHeight();
+
+        for (int i = 0; i < visitedDiagonals.length; i++)
+            visitedDiagonals[i] = false;
+        visitor.visit(originX, originY);
+
+        for (int quadrant = 0; quadrant < 4; quadrant++) {
+            int[] starts = scratch.starts;
+            int[] ends = scratch.ends;
+            int[] nextStarts = scratch.nextStarts;
+            int[] nextEnds = scratch.nextEnds;
+            starts[0] = firstSlope;
+            ends[0] = lastSlope;
+            int rangeCount = 1;
+            int columnX = COLUMN_X[quadrant];
+            int columnY = COLUMN_Y[quadrant];
+            int depthX = DEPTH_X[quadrant];
+            int depthY = DEPTH_Y[quadrant];
+
+            for (int depth = 1; depth <= radius && rangeCount > 0; depth++) {
+                int nextRangeCount = 0;
+                int rowStart = rowStarts[depth];
+                int rowEnd = rowStarts[depth + 1];
+                for (int range = 0; range < rangeCount; range++) {
+                    int start = starts[range];
+                    int end = ends[range];
+                    // Cells are in range while part of them is between the
+                    // slopes, the first one is the closest to the start.
+                    int cell = rowStart + depth + floorDiv(2 * depth * numerators[start] + denominators[start],
+                            2 * denominators[start]);
+                    boolean first = true;
+                    boolean previousOpaque = false;
+                    for (; cell < rowEnd && leftEdges[cell] < end; cell++) {
+                        int column = cell - rowStart - depth;
+                        int x = originX + column * columnX + depth * depthX;
+                        int y = originY + column * columnY + depth * depthY;
+                        boolean inside = x >= 0 && x < width && y >= 0 && y < height;
+                        boolean opaque = !inside || obstacles.isOpaque(x, y);
+
+                        if (inside && (opaque || (centers[cell] >= start && centers[cell] <= end))) {
+                            if (column != depth && column != -depth)
+                                visitor.visit(x, y);
+                            else {
+                                // The quadrant's last diagonal is the next one's first.
+                                int diagonal = (column == depth ? quadrant : (quadrant + 3) % 4) * (radius + 1) + depth;
+                                if (!visitedDiagonals[diagonal]) {
+                                    visitedDiagonals[diagonal] = true;
+                                    visitor.visit(x, y);
+                                }
+                            }
+                        }
+
+                        // Obstacles split the range, the floor cells between
+                        // them light the next row.
+                        if (!first) {
+                            if (previousOpaque && !opaque)
+                                start = leftEdges[cell];
+                            else if (!previousOpaque && opaque) {
+                                nextStarts[nextRangeCount] = start;
+                                nextEnds[nextRangeCount++] = leftEdges[cell];
+                            }
+                        }
+                        first = false;
+                        previousOpaque = opaque;
+                    }
+                    if (!first && !previousOpaque) {
+                        nextStarts[nextRangeCount] = start;
+                        nextEnds[nextRangeCount++] = end;
+                    }
+                }
+
+                int[] swap = starts;
+                starts = nextStarts;
+                nextStarts = swap;
+                swap = ends;
+                ends = nextEnds;
+                nextEnds = swap;
+                rangeCount = nextRangeCount;
+            }
+        }
+    }
+
+    public int getRadius() {
+        return radius;
+    }
+
+    private static int floorDiv(int dividend, int divisor) {
+        int quotient = dividend / divisor;
+        if ((dividend % divisor != 0) && ((dividend < 0) != (divisor < 0)))
+            quotient--;
+        return quotient;
+    }
+
+    private static long getKey(int numerator, int denominator) {
+        int divisor = gcd(Math.abs(numerator), denominator);
+        return ((long) (numerator / divisor) << 32) | (denominator / divisor);
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+}
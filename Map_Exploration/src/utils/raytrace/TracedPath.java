@@ -18,7 +18,9 @@ public class TracedPath {
     }
 
     public void addTraveled(Coordinates coordinates) {
-        if (!traveledCoordinates.contains(coordinates))
+        // A ray never comes back to a cell, so only the last one can repeat.
+        int last = traveledCoordinates.size() - 1;
+        if (last < 0 || !traveledCoordinates.get(last).equals(coordinates))
             traveledCoordinates.add(coordinates);
     }
 